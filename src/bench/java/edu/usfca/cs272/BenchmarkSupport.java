@@ -0,0 +1,73 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Shared setup for the benchmarks, so every benchmark runs on the same
+ * generated corpus
+ *
+ * @author Athene Marston
+ */
+public class BenchmarkSupport {
+
+	/**
+	 * Seed of the generated corpus
+	 */
+	public static final long SEED = 272;
+
+	/**
+	 * Number of distinct words in the generated corpus
+	 */
+	public static final int VOCABULARY = 50_000;
+
+	/**
+	 * Writes a generated corpus to a new temporary directory
+	 *
+	 * @param files number of text files
+	 * @param words number of words in each file
+	 * @return the directory of text files
+	 * @throws IOException if an IO error occurs
+	 */
+	public static Path writeCorpus(int files, int words) throws IOException {
+		Path directory = Files.createTempDirectory("corpus");
+		new CorpusGenerator(SEED, VOCABULARY).writeText(directory, files, words);
+		return directory;
+	}
+
+	/**
+	 * Builds an index of a generated corpus, deleting the corpus afterwards
+	 *
+	 * @param files number of text files
+	 * @param words number of words in each file
+	 * @return the index of the corpus
+	 * @throws IOException if an IO error occurs
+	 */
+	public static InvertedIndex buildCorpus(int files, int words) throws IOException {
+		Path directory = writeCorpus(files, words);
+		try {
+			InvertedIndex index = new InvertedIndex();
+			InvertedIndexBuilder.build(directory, index);
+			return index;
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Deletes a directory and everything in it
+	 *
+	 * @param directory the directory to delete
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building an index from a directory of generated text files, with
+ * each of the builders
+ *
+ * @author Athene Marston
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BuildBenchmark {
+
+	/**
+	 * Number of text files
+	 */
+	@Param({ "500" })
+	public int files;
+
+	/**
+	 * Number of words in each file
+	 */
+	@Param({ "2000" })
+	public int words;
+
+	/**
+	 * Number of threads of the multithreaded builders
+	 */
+	@Param({ "4" })
+	public int threads;
+
+	/**
+	 * Whether the work queue gives each worker its own deque to steal from
+	 */
+	@Param({ "false", "true" })
+	public boolean stealing;
+
+	/**
+	 * Directory of generated text files
+	 */
+	private Path corpus;
+
+	/**
+	 * Work queue of the multithreaded builders
+	 */
+	private WorkQueue queue;
+
+	/**
+	 * Generates the text files and starts the work queue
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		corpus = BenchmarkSupport.writeCorpus(files, words);
+		queue = new WorkQueue(threads, stealing);
+	}
+
+	/**
+	 * Stops the work queue and deletes the text files
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		queue.join();
+		BenchmarkSupport.delete(corpus);
+	}
+
+	/**
+	 * Builds the index on a single thread
+	 *
+	 * @return the index
+	 * @throws IOException if an IO error occurs
+	 */
+	@Benchmark
+	public InvertedIndex build() throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		InvertedIndexBuilder.build(corpus, index);
+		return index;
+	}
+
+	/**
+	 * Builds the index with a task per file
+	 *
+	 * @return the index
+	 * @throws IOException if an IO error occurs
+	 */
+	@Benchmark
+	public InvertedIndex threadedBuild() throws IOException {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex(true);
+		InvertedIndexBuilder.threadedBuild(queue, corpus, index);
+		return index;
+	}
+
+	/**
+	 * Builds the index with separate read, stem, and merge stages
+	 *
+	 * @return the index
+	 * @throws IOException if an IO error occurs
+	 */
+	@Benchmark
+	public InvertedIndex pipelinedBuild() throws IOException {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex(true);
+		InvertedIndexBuilder.pipelinedBuild(queue, corpus, index);
+		return index;
+	}
+}
@@ -0,0 +1,138 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks exact and partial search of a generated corpus, with queries of
+ * several shapes. Each benchmark runs every query of its shape once.
+ *
+ * @author Athene Marston
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	/**
+	 * Number of queries of each shape
+	 */
+	public static final int QUERIES = 100;
+
+	/**
+	 * Shape of the queries: two of the most common words ("head"), two rare words
+	 * ("tail"), one of each and a drawn word ("mixed"), or eight drawn words
+	 * ("long")
+	 */
+	@Param({ "head", "tail", "mixed", "long" })
+	public String shape;
+
+	/**
+	 * Number of text files
+	 */
+	@Param({ "500" })
+	public int files;
+
+	/**
+	 * Number of words in each file
+	 */
+	@Param({ "2000" })
+	public int words;
+
+	/**
+	 * Index of the generated corpus
+	 */
+	private InvertedIndex index;
+
+	/**
+	 * Stemmed queries
+	 */
+	private List<Set<String>> queries;
+
+	/**
+	 * Queries of the first three letters of each stem
+	 */
+	private List<Set<String>> prefixes;
+
+	/**
+	 * Builds the index and generates the queries
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		index = BenchmarkSupport.buildCorpus(files, words);
+
+		CorpusGenerator generator = new CorpusGenerator(BenchmarkSupport.SEED + 1, BenchmarkSupport.VOCABULARY);
+		SplittableRandom random = new SplittableRandom(BenchmarkSupport.SEED);
+		int vocabulary = generator.vocabularySize();
+
+		queries = new ArrayList<>(QUERIES);
+		prefixes = new ArrayList<>(QUERIES);
+		for (int i = 0; i < QUERIES; i++) {
+			String head = generator.getWord(random.nextInt(10));
+			String tail = generator.getWord(random.nextInt(vocabulary / 10, vocabulary));
+
+			String line = switch (shape) {
+				case "head" -> head + " " + generator.getWord(random.nextInt(10));
+				case "tail" -> tail + " " + generator.getWord(random.nextInt(vocabulary / 10, vocabulary));
+				case "mixed" -> head + " " + tail + " " + generator.nextWord();
+				default -> generator.nextLine(8);
+			};
+
+			TreeSet<String> stems = FileStemmer.uniqueStems(line);
+			TreeSet<String> starts = new TreeSet<>();
+			for (String stem : stems) {
+				starts.add(stem.substring(0, Math.min(3, stem.length())));
+			}
+			queries.add(stems);
+			prefixes.add(starts);
+		}
+	}
+
+	/**
+	 * Runs every query as an exact search
+	 *
+	 * @param blackhole consumes the results
+	 */
+	@Benchmark
+	public void exactSearch(Blackhole blackhole) {
+		for (Set<String> query : queries) {
+			blackhole.consume(index.exactSearch(query));
+		}
+	}
+
+	/**
+	 * Runs every query as a partial search of its prefixes
+	 *
+	 * @param blackhole consumes the results
+	 */
+	@Benchmark
+	public void partialSearch(Blackhole blackhole) {
+		for (Set<String> query : prefixes) {
+			blackhole.consume(index.partialSearch(query));
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks turning text into words and writing an index as JSON: parsing
+ * generated text, cleaning a generated HTML page, and writing the index of a
+ * generated corpus
+ *
+ * @author Athene Marston
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmark {
+
+	/**
+	 * Number of words in the text and page
+	 */
+	@Param({ "10000" })
+	public int words;
+
+	/**
+	 * Generated text with a line break every 12 words
+	 */
+	private String text;
+
+	/**
+	 * Generated HTML page with the same words
+	 */
+	private String html;
+
+	/**
+	 * Index of a generated corpus to write
+	 */
+	private InvertedIndex index;
+
+	/**
+	 * Generates the text, page, and index
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(BenchmarkSupport.SEED, BenchmarkSupport.VOCABULARY);
+
+		StringBuilder text = new StringBuilder();
+		StringBuilder html = new StringBuilder();
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<title>").append(generator.nextLine(4)).append("</title>\n");
+		html.append("<style>\np { margin: 0; }\n</style>\n<script>\nvar x = 1 < 2;\n</script>\n</head>\n<body>\n");
+
+		for (int left = words, i = 0; left > 0; left -= 12, i++) {
+			String line = generator.nextLine(Math.min(left, 12));
+			text.append(line).append('\n');
+
+			if (i % 10 == 0) {
+				html.append("<!-- section ").append(i).append(" -->\n<h2>").append(line).append("</h2>\n");
+			} else {
+				html.append("<p>").append(line.replace(",", " &amp;")).append(" <a href=\"page").append(i)
+						.append(".html\">link</a></p>\n");
+			}
+		}
+		html.append("</body>\n</html>\n");
+
+		this.text = text.toString();
+		this.html = html.toString();
+		this.index = BenchmarkSupport.buildCorpus(100, 2000);
+	}
+
+	/**
+	 * Cleans and splits the text into words
+	 *
+	 * @return the words
+	 */
+	@Benchmark
+	public String[] parse() {
+		return FileStemmer.parse(text);
+	}
+
+	/**
+	 * Removes the HTML from the page
+	 *
+	 * @return the text of the page
+	 */
+	@Benchmark
+	public String stripHtml() {
+		return HtmlCleaner.stripHtml(html);
+	}
+
+	/**
+	 * Writes the index as JSON, without keeping the output
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Benchmark
+	public void writeInvertedIndex() throws IOException {
+		index.outputIndex(Writer.nullWriter());
+	}
+}
@@ -0,0 +1,594 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Builds an inverted index from text files in three stages, each with its own
+ * threads, connected by bounded queues. Readers map each file and load it in
+ * chunks that end at line breaks, stemmers tokenize and stem the chunks into
+ * word stem positions, and a single merger adds the finished files to the
+ * index in batches. Large files are split across every stemmer instead of
+ * holding up a single thread, and merging batches of files means fewer trips
+ * through the index's write lock. When a stage falls behind, the queue in
+ * front of it fills up and the stage before it waits, so only a few chunks are
+ * ever loaded at once.
+ *
+ * The text files are found by walking the directories on a {@link WorkQueue},
+ * which only needs to be free for the walk, since every stage runs on its own
+ * threads. A pipeline can only build once.
+ *
+ * @author Athene Marston
+ */
+public class BuildPipeline {
+
+	/**
+	 * Number of bytes of a file stemmed at a time, which is rounded up to the end
+	 * of a line
+	 */
+	public static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Most files the merger adds to the index at once
+	 */
+	public static final int BATCH_SIZE = 64;
+
+	/**
+	 * Number of found text files that may wait to be read
+	 */
+	private static final int PATH_CAPACITY = 1024;
+
+	/**
+	 * Marks the end of the paths for a reader
+	 */
+	private static final Path END_PATH = Path.of("");
+
+	/**
+	 * Marks the end of the chunks for a stemmer
+	 */
+	private static final Chunk END_CHUNK = new Chunk(null, null);
+
+	/**
+	 * Marks the end of the documents for the merger
+	 */
+	private static final Document END_DOCUMENT = new Document(null, 0);
+
+	/**
+	 * Number of text files merged
+	 */
+	private static final Metrics.Counter FILES = Metrics.counter("build.files");
+
+	/**
+	 * Number of words stemmed from chunks
+	 */
+	private static final Metrics.Counter TOKENS = Metrics.counter("build.tokens");
+
+	/**
+	 * Time to stem each chunk
+	 */
+	private static final Metrics.Histogram CHUNK_TIME = Metrics.histogram("build.chunk");
+
+	/**
+	 * Index to build
+	 */
+	private final ThreadSafeInvertedIndex index;
+
+	/**
+	 * Text files waiting to be read
+	 */
+	private final ArrayBlockingQueue<Path> paths;
+
+	/**
+	 * Loaded chunks waiting to be stemmed
+	 */
+	private final ArrayBlockingQueue<Chunk> chunks;
+
+	/**
+	 * Stemmed files waiting to be merged
+	 */
+	private final ArrayBlockingQueue<Document> documents;
+
+	/**
+	 * Threads reading text files
+	 */
+	private final ReadStage[] readers;
+
+	/**
+	 * Threads stemming chunks
+	 */
+	private final StemStage[] stemmers;
+
+	/**
+	 * Thread merging stemmed files into the index
+	 */
+	private final MergeStage merger;
+
+	/**
+	 * Initializes a pipeline, without starting its threads
+	 *
+	 * @param index    index to build
+	 * @param readers  number of threads reading files; should be at least 1
+	 * @param stemmers number of threads stemming chunks; should be at least 1
+	 */
+	public BuildPipeline(ThreadSafeInvertedIndex index, int readers, int stemmers) {
+		this.index = index;
+		this.paths = new ArrayBlockingQueue<>(PATH_CAPACITY);
+		this.chunks = new ArrayBlockingQueue<>(stemmers * 2);
+		this.documents = new ArrayBlockingQueue<>(stemmers * 2);
+
+		this.readers = new ReadStage[readers];
+		for (int i = 0; i < readers; i++) {
+			this.readers[i] = new ReadStage();
+		}
+
+		this.stemmers = new StemStage[stemmers];
+		for (int i = 0; i < stemmers; i++) {
+			this.stemmers[i] = new StemStage();
+		}
+
+		this.merger = new MergeStage();
+	}
+
+	/**
+	 * Builds the index from the text files in a path, and publishes it once every
+	 * file has been merged
+	 *
+	 * @param queue    work queue to walk the directories on
+	 * @param location path to input text/s
+	 * @throws IOException          if an IO error occurs reading the path
+	 * @throws NullPointerException null path provided
+	 *
+	 * @see FileFinder#walkText(WorkQueue, Path, java.util.function.Consumer)
+	 */
+	public void build(WorkQueue queue, Path location) throws IOException, NullPointerException {
+		for (ReadStage reader : readers) {
+			reader.start();
+		}
+		for (StemStage stemmer : stemmers) {
+			stemmer.start();
+		}
+		merger.start();
+
+		try {
+			FileFinder.walkText(queue, location, this::submit);
+			queue.finish();
+		} finally {
+			shutdown();
+		}
+		index.publish();
+	}
+
+	/**
+	 * Adds a text file to be read, waiting if the readers are too far behind
+	 *
+	 * @param path text file to read
+	 */
+	private void submit(Path path) {
+		try {
+			paths.put(path);
+		} catch (InterruptedException e) {
+			System.err.printf("Warning: interrupted while adding file: %s%n", path.toString());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Ends each stage once the stage before it has finished, and waits for the
+	 * merger to finish
+	 */
+	private void shutdown() {
+		try {
+			for (int i = 0; i < readers.length; i++) {
+				paths.put(END_PATH);
+			}
+			for (ReadStage reader : readers) {
+				reader.join();
+			}
+
+			for (int i = 0; i < stemmers.length; i++) {
+				chunks.put(END_CHUNK);
+			}
+			for (StemStage stemmer : stemmers) {
+				stemmer.join();
+			}
+
+			documents.put(END_DOCUMENT);
+			merger.join();
+		} catch (InterruptedException e) {
+			System.err.println("Warning: interrupted while finishing build.");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Finds where a chunk that starts at an offset of a mapped window should end,
+	 * which is after the first line break at least {@link #CHUNK_SIZE} bytes in.
+	 * A line break in UTF-8 is never part of another character, and the words of
+	 * a line never depend on other lines, so each chunk can be decoded and
+	 * tokenized on its own.
+	 *
+	 * @param window mapped window of the file
+	 * @param start  offset the chunk starts at
+	 * @param limit  number of bytes in the window
+	 * @param last   true if the window ends at the end of the file
+	 * @return offset the chunk ends at, or -1 if no line ends in the rest of a
+	 *         window that does not end the file
+	 */
+	private static int chunkEnd(ByteBuffer window, int start, int limit, boolean last) {
+		int target = (int) Math.min((long) start + CHUNK_SIZE, limit);
+		for (int i = target - 1; i < limit; i++) {
+			if (isLineBreak(window.get(i))) {
+				return i + 1;
+			}
+		}
+		if (last) {
+			return limit;
+		}
+
+		for (int i = target - 2; i >= start; i--) { // end at the last line in the window instead
+			if (isLineBreak(window.get(i))) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if a byte is a line break, using the same line breaks as
+	 * {@link java.io.BufferedReader#readLine()}
+	 *
+	 * @param b byte to check
+	 * @return true if the byte is a line break, else false
+	 */
+	private static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * A text file being built, which is merged once all of its chunks are stemmed
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class Document {
+
+		/**
+		 * Text file being built
+		 */
+		private final Path path;
+
+		/**
+		 * Chunks of the file, in order
+		 */
+		private final Chunk[] chunks;
+
+		/**
+		 * Number of chunks not stemmed yet
+		 */
+		private int remaining;
+
+		/**
+		 * True if any chunk could not be stemmed
+		 */
+		private boolean failed;
+
+		/**
+		 * Positions of each word stem in the whole file, once every chunk is stemmed
+		 */
+		private HashMap<String, PositionList> positions;
+
+		/**
+		 * Initializes a document
+		 *
+		 * @param path  text file being built
+		 * @param count number of chunks in the file
+		 */
+		public Document(Path path, int count) {
+			this.path = path;
+			this.chunks = new Chunk[count];
+			this.remaining = count;
+			this.failed = false;
+			this.positions = null;
+		}
+
+		/**
+		 * Records that a chunk has been stemmed, combining the positions of every
+		 * chunk if it was the last one
+		 *
+		 * @param stemmed true if the chunk was stemmed, false if it failed
+		 * @return true if every chunk has now been stemmed, else false
+		 */
+		public synchronized boolean finish(boolean stemmed) {
+			failed |= !stemmed;
+			if (--remaining > 0) {
+				return false;
+			}
+
+			if (!failed) {
+				combine();
+			}
+			return true;
+		}
+
+		/**
+		 * Combines the positions of every chunk, shifting the positions of each
+		 * chunk past the words of the chunks before it
+		 */
+		private void combine() {
+			positions = chunks[0].positions;
+			int offset = chunks[0].words;
+
+			for (int i = 1; i < chunks.length; i++) {
+				for (var entry : chunks[i].positions.entrySet()) {
+					PositionList list = positions.computeIfAbsent(entry.getKey(), word -> new PositionList());
+					for (int position : entry.getValue()) {
+						list.add(position + offset);
+					}
+				}
+				offset += chunks[i].words;
+			}
+		}
+	}
+
+	/**
+	 * Part of a text file that ends at a line break, or the whole file
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class Chunk {
+
+		/**
+		 * Text file the chunk is part of
+		 */
+		private final Document document;
+
+		/**
+		 * Loaded bytes of the chunk, or null to read the whole file
+		 */
+		private ByteBuffer bytes;
+
+		/**
+		 * Positions of each word stem in the chunk, starting from 1
+		 */
+		private HashMap<String, PositionList> positions;
+
+		/**
+		 * Number of words in the chunk
+		 */
+		private int words;
+
+		/**
+		 * Initializes a chunk
+		 *
+		 * @param document text file the chunk is part of
+		 * @param bytes    loaded bytes of the chunk, or null to read the whole file
+		 */
+		public Chunk(Document document, ByteBuffer bytes) {
+			this.document = document;
+			this.bytes = bytes;
+			this.positions = null;
+			this.words = 0;
+		}
+	}
+
+	/**
+	 * Thread that maps text files, splits them into chunks, and loads each chunk
+	 * before passing it on to the stemmers
+	 */
+	private class ReadStage extends Thread {
+
+		/**
+		 * Initializes a reader thread with a custom name.
+		 */
+		public ReadStage() {
+			setName("Reader" + getName());
+		}
+
+		@Override
+		public void run() {
+			try {
+				Path path;
+				while ((path = paths.take()) != END_PATH) {
+					try {
+						read(path);
+					} catch (IOException | RuntimeException e) {
+						System.out.printf("Error stemming file: %s%n", path.toString());
+					}
+				}
+			} catch (InterruptedException e) {
+				System.err.printf("Warning: %s interrupted while waiting.%n", this.getName());
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Splits a text file into chunks and passes each one to the stemmers once it
+		 * is loaded. Files with a line longer than a whole window are not split.
+		 *
+		 * @param path text file to read
+		 * @throws IOException          if an IO error occurs
+		 * @throws InterruptedException if interrupted while waiting for the
+		 *                              stemmers
+		 */
+		private void read(Path path) throws IOException, InterruptedException {
+			ArrayList<MappedByteBuffer> slices = new ArrayList<>();
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				long position = 0;
+
+				while (position < size) { // map a window at a time, like TextTokenizer
+					long mapped = Math.min(size - position, TextTokenizer.WINDOW_SIZE);
+					MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+					boolean last = position + mapped == size;
+
+					int start = 0;
+					while (start < mapped) {
+						int end = chunkEnd(window, start, (int) mapped, last);
+						if (end < 0) {
+							break;
+						}
+						slices.add(window.slice(start, end - start));
+						start = end;
+					}
+
+					if (start == 0) { // a single line fills the window, so read the file in one piece
+						slices.clear();
+						break;
+					}
+					position += start;
+				}
+
+				if (size > 0 && slices.isEmpty()) {
+					Document document = new Document(path, 1);
+					document.chunks[0] = new Chunk(document, null);
+					chunks.put(document.chunks[0]);
+					return;
+				}
+			}
+
+			Document document = new Document(path, slices.size());
+			for (int i = 0; i < slices.size(); i++) {
+				document.chunks[i] = new Chunk(document, slices.get(i));
+			}
+
+			for (int i = 0; i < slices.size(); i++) {
+				slices.get(i).load(); // read from disk here instead of in the stemmers
+				chunks.put(document.chunks[i]);
+			}
+		}
+	}
+
+	/**
+	 * Thread that tokenizes and stems chunks, passing each file on to the merger
+	 * once its last chunk is stemmed
+	 */
+	private class StemStage extends Thread {
+
+		/**
+		 * Tokenizer whose buffers are reused for every chunk
+		 */
+		private final TextTokenizer tokenizer;
+
+		/**
+		 * Initializes a stemmer thread with a custom name.
+		 */
+		public StemStage() {
+			this.tokenizer = new TextTokenizer();
+			setName("Stemmer" + getName());
+		}
+
+		@Override
+		public void run() {
+			try {
+				Chunk chunk;
+				while ((chunk = chunks.take()) != END_CHUNK) {
+					boolean stemmed = false;
+					try {
+						stem(chunk);
+						stemmed = true;
+					} catch (IOException | RuntimeException e) {
+						// reported by the merger for the whole file
+					} finally {
+						if (chunk.document.finish(stemmed)) {
+							documents.put(chunk.document);
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				System.err.printf("Warning: %s interrupted while waiting.%n", this.getName());
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Collects the positions of every word stem in a chunk
+		 *
+		 * @param chunk the chunk to stem
+		 * @throws IOException if unable to read or decode the chunk
+		 */
+		private void stem(Chunk chunk) throws IOException {
+			long start = System.nanoTime();
+			Stemmer stemmer = StemCache.english();
+			HashMap<String, PositionList> positions = new HashMap<>();
+			int[] position = { 1 };
+
+			if (chunk.bytes == null) {
+				tokenizer.tokenize(chunk.document.path, word -> {
+					String stem = stemmer.stem(word).toString();
+					positions.computeIfAbsent(stem, s -> new PositionList()).add(position[0]++);
+				});
+			} else {
+				tokenizer.tokenize(chunk.bytes, word -> {
+					String stem = stemmer.stem(word).toString();
+					positions.computeIfAbsent(stem, s -> new PositionList()).add(position[0]++);
+				});
+				chunk.bytes = null; // unmapped once nothing refers to it
+			}
+
+			chunk.positions = positions;
+			chunk.words = position[0] - 1;
+
+			TOKENS.add(chunk.words);
+			CHUNK_TIME.recordSince(start);
+		}
+	}
+
+	/**
+	 * Thread that adds stemmed files to the index, in batches of whatever files
+	 * are waiting
+	 */
+	private class MergeStage extends Thread {
+
+		/**
+		 * Initializes a merger thread with a custom name.
+		 */
+		public MergeStage() {
+			setName("Merger" + getName());
+		}
+
+		@Override
+		public void run() {
+			try {
+				Document document;
+				do {
+					document = documents.take();
+					InvertedIndex batch = new InvertedIndex();
+					int batched = 0;
+
+					while (document != null && document != END_DOCUMENT) {
+						if (document.failed) {
+							System.out.printf("Error stemming file: %s%n", document.path.toString());
+						} else {
+							batch.addPositions(document.path.toString(), document.positions);
+							FILES.increment();
+						}
+						document = ++batched < BATCH_SIZE ? documents.poll() : null; // never waits for a batch to fill
+					}
+
+					if (batch.countsSize() > 0) {
+						try {
+							index.addAll(batch);
+						} catch (RuntimeException e) {
+							// keep taking documents, or the stemmers would block forever
+							System.out.printf("Error merging %d files: %s%n", batch.countsSize(), e.getMessage());
+						}
+					}
+				} while (document != END_DOCUMENT);
+			} catch (InterruptedException e) {
+				System.err.printf("Warning: %s interrupted while waiting.%n", this.getName());
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic text for benchmarks and load tests, where words are drawn
+ * from a vocabulary by a Zipf distribution like natural-language text: the word
+ * of rank r is drawn in proportion to 1 / r^exponent. The same seed always
+ * generates the same text, so benchmark runs can be compared.
+ *
+ * The vocabulary is made of pronounceable made-up words built from syllables,
+ * so they are cleaned and stemmed the same way as real words. Besides plain
+ * text files, the generator writes a linked site of HTML pages for the crawler
+ * and a query log for -query. See {@link #main(String[])} for the command-line
+ * tool.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Athene Marston
+ */
+public class CorpusGenerator {
+
+	/**
+	 * Default Zipf exponent, which is close to that of English text
+	 */
+	public static final double DEFAULT_EXPONENT = 1.0;
+
+	/**
+	 * Most text files written to a single directory of a tree
+	 */
+	public static final int FILES_PER_DIRECTORY = 100;
+
+	/**
+	 * Number of links on each generated page
+	 */
+	public static final int LINKS_PER_PAGE = 5;
+
+	/**
+	 * Syllables words are built from
+	 */
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ru", "sa", "ti", "vo", "bel", "dan", "fer",
+			"gol", "har", "jin", "kor", "lum", "mar", "nis", "pol", "quen", "ros", "sten", "tor", "wil" };
+
+	/**
+	 * Random numbers for the text
+	 */
+	private final SplittableRandom random;
+
+	/**
+	 * Words of the vocabulary, by rank
+	 */
+	private final String[] vocabulary;
+
+	/**
+	 * Cumulative probability of drawing each rank or a lower one
+	 */
+	private final double[] cumulative;
+
+	/**
+	 * Initializes a generator
+	 *
+	 * @param seed       seed of the random numbers
+	 * @param vocabulary number of distinct words
+	 * @param exponent   Zipf exponent, where larger exponents make the most common
+	 *                   words more common
+	 */
+	public CorpusGenerator(long seed, int vocabulary, double exponent) {
+		this.random = new SplittableRandom(seed);
+		this.vocabulary = new String[vocabulary];
+		this.cumulative = new double[vocabulary];
+
+		double total = 0;
+		for (int rank = 0; rank < vocabulary; rank++) {
+			this.vocabulary[rank] = word(rank);
+			total += 1 / Math.pow(rank + 1, exponent);
+			this.cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < vocabulary; rank++) {
+			this.cumulative[rank] /= total;
+		}
+	}
+
+	/**
+	 * Initializes a generator with the default exponent
+	 *
+	 * @param seed       seed of the random numbers
+	 * @param vocabulary number of distinct words
+	 */
+	public CorpusGenerator(long seed, int vocabulary) {
+		this(seed, vocabulary, DEFAULT_EXPONENT);
+	}
+
+	/**
+	 * Builds the made-up word of a rank, so every rank has a different word
+	 *
+	 * @param rank rank of the word, starting from 0
+	 * @return the word
+	 */
+	private static String word(int rank) {
+		StringBuilder word = new StringBuilder();
+		int left = rank;
+		do { // digits of the rank in base SYLLABLES.length, at least two syllables
+			word.append(SYLLABLES[left % SYLLABLES.length]);
+			left /= SYLLABLES.length;
+		} while (left > 0 || word.length() < 4);
+		return word.toString();
+	}
+
+	/**
+	 * Returns the word of a rank
+	 *
+	 * @param rank rank of the word, starting from 0 for the most common word
+	 * @return the word
+	 */
+	public String getWord(int rank) {
+		return vocabulary[rank];
+	}
+
+	/**
+	 * Returns the number of distinct words
+	 *
+	 * @return size of the vocabulary
+	 */
+	public int vocabularySize() {
+		return vocabulary.length;
+	}
+
+	/**
+	 * Draws a rank from the Zipf distribution
+	 *
+	 * @return rank of the word, starting from 0
+	 */
+	public int nextRank() {
+		int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(rank < 0 ? -rank - 1 : rank, vocabulary.length - 1);
+	}
+
+	/**
+	 * Draws a word from the Zipf distribution
+	 *
+	 * @return the word
+	 */
+	public String nextWord() {
+		return vocabulary[nextRank()];
+	}
+
+	/**
+	 * Generates a line of text, where some words are capitalized or followed by
+	 * punctuation so the text has something to clean
+	 *
+	 * @param words number of words in the line
+	 * @return the line, without a line break
+	 */
+	public String nextLine(int words) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				line.append(' ');
+			}
+
+			String word = nextWord();
+			if (random.nextInt(10) == 0) {
+				line.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			} else {
+				line.append(word);
+			}
+
+			if (random.nextInt(12) == 0) {
+				line.append(random.nextBoolean() ? '.' : ',');
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Writes text files of the same length to a directory
+	 *
+	 * @param directory directory to write to, which is created if needed
+	 * @param files     number of files to write
+	 * @param words     number of words in each file
+	 * @return the files that were written
+	 * @throws IOException if an IO error occurs
+	 */
+	public List<Path> writeText(Path directory, int files, int words) throws IOException {
+		Files.createDirectories(directory);
+		ArrayList<Path> written = new ArrayList<>(files);
+
+		for (int i = 0; i < files; i++) {
+			Path path = directory.resolve(String.format("doc%06d.txt", i));
+			writeLines(path, words);
+			written.add(path);
+		}
+		return written;
+	}
+
+	/**
+	 * Writes a text file of generated lines of 12 words
+	 *
+	 * @param path  the file to write
+	 * @param words number of words in the file
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeLines(Path path, int words) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			for (int left = words; left > 0; left -= 12) {
+				writer.write(nextLine(Math.min(left, 12)));
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Draws a document length from an exponential distribution, so most documents
+	 * are short and a few are several times longer than the mean
+	 *
+	 * @param mean mean number of words
+	 * @return number of words, at least 1
+	 */
+	public int nextLength(int mean) {
+		return Math.max(1, (int) (-mean * Math.log(1 - random.nextDouble())));
+	}
+
+	/**
+	 * Writes text files of varied lengths to a tree of directories, with at most
+	 * {@link #FILES_PER_DIRECTORY} files in each directory
+	 *
+	 * @param directory directory to write to, which is created if needed
+	 * @param files     number of files to write
+	 * @param words     mean number of words in each file
+	 * @return the number of words that were written
+	 * @throws IOException if an IO error occurs
+	 */
+	public long writeTextTree(Path directory, int files, int words) throws IOException {
+		long written = 0;
+
+		for (int i = 0; i < files; i += FILES_PER_DIRECTORY) {
+			Path subdirectory = directory.resolve(String.format("dir%04d", i / FILES_PER_DIRECTORY));
+			Files.createDirectories(subdirectory);
+
+			for (int j = i; j < Math.min(i + FILES_PER_DIRECTORY, files); j++) {
+				int length = nextLength(words);
+				writeLines(subdirectory.resolve(String.format("doc%06d.txt", j)), length);
+				written += length;
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Writes a site of linked HTML pages for the crawler, starting from
+	 * index.html. Every page links to the next one, so the whole site can be
+	 * reached from the first page, and to a few random pages. Pages have the
+	 * comments, entities, and script and style blocks found on real pages, so
+	 * they have something to clean.
+	 *
+	 * @param directory directory to write to, which is created if needed
+	 * @param pages     number of pages to write
+	 * @param words     mean number of words on each page
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeSite(Path directory, int pages, int words) throws IOException {
+		Files.createDirectories(directory);
+
+		for (int i = 0; i < pages; i++) {
+			try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(pageName(i)), UTF_8)) {
+				writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n");
+				writer.write("<title>" + nextLine(4) + "</title>\n");
+				writer.write("<style>\nbody { font-family: sans-serif; }\n</style>\n");
+				writer.write("<script>\nvar page = " + i + ";\n</script>\n</head>\n<body>\n");
+				writer.write("<!-- page " + i + " -->\n<h1>" + nextLine(4) + "</h1>\n");
+
+				for (int left = nextLength(words); left > 0; left -= 12) {
+					writer.write("<p>" + nextLine(Math.min(left, 12)).replace(",", " &amp;") + "</p>\n");
+				}
+
+				writer.write("<ul>\n");
+				for (int j = 0; j < LINKS_PER_PAGE; j++) {
+					int target = j == 0 ? (i + 1) % pages : random.nextInt(pages);
+					String fragment = random.nextInt(4) == 0 ? "#top" : ""; // removed when crawled
+					writer.write("<li><a href=\"" + pageName(target) + fragment + "\">" + nextLine(2) + "</a></li>\n");
+				}
+				writer.write("</ul>\n</body>\n</html>\n");
+			}
+		}
+	}
+
+	/**
+	 * Returns the file name of a generated page
+	 *
+	 * @param page number of the page
+	 * @return index.html for the first page, else the page's numbered name
+	 */
+	private static String pageName(int page) {
+		return page == 0 ? "index.html" : String.format("page%05d.html", page);
+	}
+
+	/**
+	 * Generates a query log with a mix of query shapes like real searches: a
+	 * quarter repeat an earlier query, and the rest are one common word, two
+	 * words, a rare word with a common one, or a long query
+	 *
+	 * @param count number of queries
+	 * @return the queries
+	 */
+	public List<String> queryLog(int count) {
+		ArrayList<String> queries = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			if (!queries.isEmpty() && random.nextInt(4) == 0) { // popular queries are searched again
+				queries.add(queries.get(Math.min(nextRank(), queries.size() - 1)));
+				continue;
+			}
+
+			int shape = random.nextInt(10);
+			if (shape < 4) {
+				queries.add(nextWord());
+			} else if (shape < 7) {
+				queries.add(nextLine(2));
+			} else if (shape < 9) {
+				String rare = vocabulary[random.nextInt(vocabulary.length / 10, vocabulary.length)];
+				queries.add(rare + " " + nextWord());
+			} else {
+				queries.add(nextLine(4 + random.nextInt(5)));
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Generates query lines, with words drawn from the same distribution as the
+	 * text
+	 *
+	 * @param count number of queries
+	 * @param terms number of words in each query
+	 * @return the queries
+	 */
+	public List<String> queries(int count, int terms) {
+		ArrayList<String> queries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			queries.add(nextLine(terms));
+		}
+		return queries;
+	}
+
+	/**
+	 * Writes a generated corpus based on the provided command-line arguments:
+	 * text files under "text", a site under "site", and a query log in
+	 * "queries.txt", all in the -output directory (default "corpus"). The sizes
+	 * are set with -files, -words (mean words per file or page), -pages, and
+	 * -queries, and the distribution with -seed, -vocabulary, and -exponent. A
+	 * size of 0 skips that part of the corpus.
+	 *
+	 * @param args flag/value pairs used to start this program
+	 */
+	public static void main(String[] args) {
+		ArgumentParser parser = new ArgumentParser(args);
+		Path output = parser.getPath("-output", Path.of("corpus"));
+		int files = parser.getInteger("-files", 1000, 0);
+		int words = parser.getInteger("-words", 1000, 1);
+		int pages = parser.getInteger("-pages", 100, 0);
+		int queries = parser.getInteger("-queries", 1000, 0);
+
+		CorpusGenerator generator = new CorpusGenerator(parser.getInteger("-seed", 272),
+				parser.getInteger("-vocabulary", 50_000, 1), parser.getDouble("-exponent", DEFAULT_EXPONENT));
+
+		try {
+			if (files > 0) {
+				long written = generator.writeTextTree(output.resolve("text"), files, words);
+				System.out.printf("Wrote %d text files with %d words.%n", files, written);
+			}
+
+			if (pages > 0) {
+				generator.writeSite(output.resolve("site"), pages, words);
+				System.out.printf("Wrote %d pages, starting from %s.%n", pages, output.resolve("site/index.html"));
+			}
+
+			if (queries > 0) {
+				Files.write(output.resolve("queries.txt"), generator.queryLog(queries), UTF_8);
+				System.out.printf("Wrote %d queries.%n", queries);
+			}
+		} catch (IOException e) {
+			System.out.println("Error writing corpus: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package edu.usfca.cs272;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of crawled pages, so a crawled index can be rebuilt after a
+ * restart without fetching the pages again. Each fetched url is logged once
+ * its page has been added to the index, with the links found on it, its
+ * statistics and snippet, and the positions of its word stems.
+ *
+ * Once enough pages are logged, the whole index is written next to the log as
+ * an {@link IndexFile} and a checkpoint record is appended with the number of
+ * pages the file covers, so opening the log only loads the checkpoint and
+ * replays the pages logged after those. The file is written from a copy of the
+ * index without holding up other pages being logged, and each checkpoint waits
+ * for as many new pages as the last one covered, so the index is written a
+ * logarithmic number of times over a crawl. Each record is stored as its
+ * length, a CRC32 checksum, and its contents, so a record torn by a crash is
+ * detected and dropped when the log is opened.
+ *
+ * @author Athene Marston
+ */
+public class CrawlLog implements Closeable {
+
+	/**
+	 * Fewest pages logged between checkpoints
+	 */
+	public static final int CHECKPOINT_INTERVAL = 100;
+
+	/**
+	 * Record type of a crawled page
+	 */
+	private static final byte PAGE = 1;
+
+	/**
+	 * Record type marking that the first pages of the log, as many as the record
+	 * holds, are in the checkpoint file
+	 */
+	private static final byte CHECKPOINT = 2;
+
+	/**
+	 * Index pages are replayed into and checkpointed from
+	 */
+	private final ThreadSafeInvertedIndex index;
+
+	/**
+	 * Path of the checkpoint file
+	 */
+	private final Path checkpoint;
+
+	/**
+	 * Channel appending to the log
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Links found on each url in the log, in the order the urls were logged
+	 */
+	private final Map<String, List<String>> replayed;
+
+	/**
+	 * Held while writing a checkpoint, so only one is written at a time
+	 */
+	private final Object checkpointLock;
+
+	/**
+	 * Number of pages in the log
+	 */
+	private int logged;
+
+	/**
+	 * Number of pages logged since the last checkpoint began
+	 */
+	private int pages;
+
+	/**
+	 * Number of pages to log before the next checkpoint
+	 */
+	private int interval;
+
+	/**
+	 * True while a checkpoint started by {@link #append} is being written
+	 */
+	private boolean checkpointing;
+
+	/**
+	 * Opens a crawl log, replaying the checkpoint and any pages logged after it
+	 * into the index. A new log is created if none exists.
+	 *
+	 * @param path  path of the log file
+	 * @param index index to replay pages into and checkpoint
+	 * @throws IOException if an IO error occurs or the checkpoint is invalid
+	 */
+	public CrawlLog(Path path, ThreadSafeInvertedIndex index) throws IOException {
+		this.index = index;
+		this.checkpoint = path.resolveSibling(path.getFileName() + ".checkpoint");
+		this.replayed = new LinkedHashMap<>();
+		this.checkpointLock = new Object();
+		this.logged = 0;
+		this.pages = 0;
+		this.interval = CHECKPOINT_INTERVAL;
+		this.checkpointing = false;
+
+		if (!Files.exists(path)) {
+			Files.deleteIfExists(checkpoint); // left over from an older log
+		}
+
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			replay();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the links found on every url in the log when it was opened, so a
+	 * crawl can be resumed without fetching those urls again
+	 *
+	 * @return unmodifiable map from logged urls to the links found on them
+	 */
+	public Map<String, List<String>> replayed() {
+		return Collections.unmodifiableMap(replayed);
+	}
+
+	/**
+	 * Loads the checkpoint and the pages logged after it, and drops a torn record
+	 * at the end of the log
+	 *
+	 * @throws IOException if an IO error occurs or the checkpoint is invalid
+	 */
+	private void replay() throws IOException {
+		if (channel.size() > Integer.MAX_VALUE) {
+			throw new IOException("Crawl log is too large to map.");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+		ArrayList<Integer> offsets = new ArrayList<>(); // of every page
+		int checkpointed = 0; // number of pages before the last checkpoint record
+		int end = 0;
+		CRC32 crc = new CRC32();
+
+		while (buffer.remaining() >= 8) {
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length < 1 || length > buffer.remaining()) {
+				break;
+			}
+
+			ByteBuffer record = buffer.slice(buffer.position(), length);
+			crc.reset();
+			crc.update(record.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			try {
+				if (record.get() == PAGE) {
+					offsets.add(buffer.position());
+					replayed.put(IndexFile.readString(record), readLinks(record));
+				} else {
+					int covered = record.getInt();
+					if (covered < 0 || covered > offsets.size()) {
+						throw new IllegalArgumentException("Invalid checkpoint record.");
+					}
+					checkpointed = covered;
+				}
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				break;
+			}
+
+			buffer.position(buffer.position() + length);
+			end = buffer.position();
+		}
+
+		if (Files.exists(checkpoint)) {
+			IndexFile.read(checkpoint, index);
+		} else { // replay everything without the checkpoint
+			checkpointed = 0;
+		}
+
+		InvertedIndex local = new InvertedIndex();
+		for (int offset : offsets.subList(checkpointed, offsets.size())) {
+			readPage(buffer.position(offset + 1), local);
+		}
+		index.addAll(local);
+		index.publish();
+		logged = offsets.size();
+		pages = offsets.size() - checkpointed;
+		interval = Math.max(CHECKPOINT_INTERVAL, checkpointed);
+
+		channel.truncate(end);
+		channel.position(end);
+	}
+
+	/**
+	 * Reads the links of a page record
+	 *
+	 * @param record buffer positioned at the links
+	 * @return the links that were read
+	 */
+	private static List<String> readLinks(ByteBuffer record) {
+		int count = IndexFile.readCount(record);
+		ArrayList<String> links = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			links.add(IndexFile.readString(record));
+		}
+		return links;
+	}
+
+	/**
+	 * Reads a page record, adding its statistics and snippet to the index and its
+	 * word stems to a local index, unless the page is already in the index
+	 *
+	 * @param record buffer positioned after the record type
+	 * @param local  index to add the word stems to
+	 */
+	private void readPage(ByteBuffer record, InvertedIndex local) {
+		String url = IndexFile.readString(record);
+		readLinks(record);
+
+		if (index.currentCountsContains(url) || local.countsContains(url)) { // already added before the checkpoint
+			return;
+		}
+
+		int size = record.getInt();
+		if (size >= 0) {
+			String[] statistics = new String[size];
+			for (int i = 0; i < size; i++) {
+				statistics[i] = IndexFile.readString(record);
+			}
+			index.addHTMLStatistics(url, statistics);
+		}
+
+		String snippet = IndexFile.readString(record);
+		if (snippet != null) {
+			index.addHTMLSnippet(url, snippet);
+		}
+
+		int count = IndexFile.readCount(record);
+		if (count == 0) {
+			return;
+		}
+
+		int[] remap = { local.addLocation(url, count) };
+		int stems = IndexFile.readCount(record);
+		for (int i = 0; i < stems; i++) {
+			String stem = IndexFile.readString(record);
+			PostingList postings = new PostingList();
+			postings.add(0, PositionList.readFrom(record));
+			local.addPostings(stem, postings, remap);
+		}
+	}
+
+	/**
+	 * Encodes a crawled page as a record for {@link #append(byte[])}. The page's
+	 * local index is only read, so this should be called before the local index
+	 * is added to the index, which may share its position lists.
+	 *
+	 * @param url        url of the page
+	 * @param links      links found on the page, may be null
+	 * @param statistics statistics of the page, may be null
+	 * @param snippet    snippet of the page, may be null
+	 * @param local      index of only this page's word stems
+	 * @return contents of the page record
+	 * @throws IOException if an IO error occurs
+	 */
+	public static byte[] encode(URL url, List<URL> links, String[] statistics, String snippet, InvertedIndex local)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeByte(PAGE);
+		IndexFile.writeString(url.toString(), out);
+
+		out.writeInt(links == null ? 0 : links.size());
+		if (links != null) {
+			for (URL link : links) {
+				IndexFile.writeString(link.toString(), out);
+			}
+		}
+
+		out.writeInt(statistics == null ? -1 : statistics.length);
+		if (statistics != null) {
+			for (String value : statistics) {
+				IndexFile.writeString(value, out);
+			}
+		}
+		IndexFile.writeString(snippet, out);
+
+		int doc = local.countsSize() == 0 ? -1 : 0;
+		out.writeInt(doc < 0 ? 0 : local.getWordCount(doc));
+		out.writeInt(local.size());
+		var iterator = local.postings();
+		while (iterator.hasNext()) {
+			var entry = iterator.next();
+			IndexFile.writeString(entry.getKey(), out);
+			entry.getValue().get(doc).writeTo(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Logs a crawled page, checkpointing the index if enough pages have been
+	 * logged since the last checkpoint. The checkpoint is written by the calling
+	 * thread, while other threads keep logging pages. The page should already be
+	 * added to the index.
+	 *
+	 * @param record page record from
+	 *               {@link #encode(URL, List, String[], String, InvertedIndex)}
+	 * @throws IOException if an IO error occurs
+	 */
+	public void append(byte[] record) throws IOException {
+		boolean due;
+		synchronized (this) {
+			write(record);
+			logged++;
+			due = ++pages >= interval && !checkpointing;
+			checkpointing = checkpointing || due;
+		}
+
+		if (due) {
+			try {
+				checkpoint();
+			} finally {
+				synchronized (this) {
+					checkpointing = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the whole index to the checkpoint file and marks the log, so pages
+	 * logged so far no longer need to be replayed. Pages may be logged while the
+	 * file is written, and are replayed unless they made it into the file.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	public void checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			int covered;
+			synchronized (this) { // every page logged so far is already in the index
+				channel.force(false);
+				covered = logged;
+				pages = 0;
+			}
+
+			Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+			IndexFile.write(index, temp); // copies the index first
+			Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES);
+			record.put(CHECKPOINT).putInt(covered);
+			synchronized (this) {
+				write(record.array());
+				channel.force(false);
+				interval = Math.max(CHECKPOINT_INTERVAL, covered);
+			}
+		}
+	}
+
+	/**
+	 * Appends a record with its length and checksum
+	 *
+	 * @param record contents of the record
+	 * @throws IOException if an IO error occurs
+	 */
+	private void write(byte[] record) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+
+		ByteBuffer buffer = ByteBuffer.allocate(record.length + 8);
+		buffer.putInt(record.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(record);
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Checkpoints the index if any pages were logged since the last checkpoint,
+	 * and closes the log
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			boolean due;
+			synchronized (this) {
+				due = pages > 0;
+			}
+			if (due) {
+				checkpoint();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
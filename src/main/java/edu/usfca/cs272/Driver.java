@@ -31,38 +31,97 @@ public class Driver {
 		InvertedIndex invertedIndex;
 		WorkQueue queue = null;
 		ThreadSafeInvertedIndex safe = null;
+		int limit = argumentParser.getInteger("-limit", Integer.MAX_VALUE, 1); // top results kept per query
 
 		if (argumentParser.hasFlag("-threads") | argumentParser.hasFlag("-html") | argumentParser.hasFlag("-server")) {
 			int numThreads = argumentParser.getInteger("-threads", 5, 1);
 
-			queue = new WorkQueue(numThreads);
-			safe = new ThreadSafeInvertedIndex();
+			queue = new WorkQueue(numThreads, argumentParser.hasFlag("-stealing")); // per-worker deques
+			Metrics.gauge("queue.depth", queue::waiting); // only the queue this run owns is reported
+			if (argumentParser.hasFlag("-segments")) { // merge local indexes in the background instead
+				safe = new SegmentedInvertedIndex(queue);
+			} else {
+				// -snapshot lets searches read published copies without locking, at the cost of a second copy in memory
+				safe = new ThreadSafeInvertedIndex(argumentParser.hasFlag("-snapshot"));
+			}
 			invertedIndex = safe;
-			searchResults = new MultithreadedSearchResults(safe, queue);
+			// -trace times each query's phases, for the slow-query log
+			searchResults = new MultithreadedSearchResults(safe, queue, limit, argumentParser.hasFlag("-trace"));
 
 		} else {
 			invertedIndex = new InvertedIndex();
-			searchResults = new SearchResults(invertedIndex);
+			searchResults = new SearchResults(invertedIndex, limit);
 		}
 
 		try {
+			if (argumentParser.hasFlag("-openindex")) {
+				try {
+					// loads a previously saved index before building anything else
+					IndexFile.read(argumentParser.getPath("-openindex", null), invertedIndex);
+				} catch (NullPointerException e) {
+					System.out.println("Unable to read index path.");
+				} catch (IOException e) {
+					System.out.println("Error reading index file: " + e.getMessage());
+				}
+			}
+
+			if (argumentParser.hasFlag("-loadindex")) {
+				try {
+					// loads a previous run's json index output, parsing chunks on the queue if there is one
+					JsonReader.readInvertedIndex(argumentParser.getPath("-loadindex", Path.of("index.json")),
+							invertedIndex, queue);
+				} catch (IOException e) {
+					System.out.println("Error reading index json: " + e.getMessage());
+				}
+			}
+
+			CrawlLog crawlLog = null;
+			if (argumentParser.hasFlag("-crawllog") && safe != null) {
+				try {
+					// replays pages crawled by earlier runs, then logs newly crawled pages
+					crawlLog = new CrawlLog(argumentParser.getPath("-crawllog", Path.of("crawl.log")), safe);
+				} catch (IOException e) {
+					System.out.println("Error replaying crawl log: " + e.getMessage());
+				}
+			}
+
 			if (argumentParser.hasFlag("-html")) {
 				int crawlNum = argumentParser.getInteger("-crawl", 1);	//total number of urls to crawl (including seed)
-				
+
 				//builds inverted index with web crawler from seed url
 				try {
 					if (safe != null && queue != null) {
-						WebCrawler webCrawler = new WebCrawler(queue, safe, crawlNum);
+						WebCrawler webCrawler = new WebCrawler(queue, safe, crawlNum, crawlLog);
 						webCrawler.build(argumentParser.getString("-html"));
 					}
 				} catch (Exception e) {
 					System.out.println("Error parsing url: " + e.getClass().getSimpleName());
 				}
 			}
+
+			if (crawlLog != null) {
+				try {
+					crawlLog.close(); // checkpoints the pages crawled since the last checkpoint
+				} catch (IOException e) {
+					System.out.println("Error writing crawl log checkpoint.");
+				}
+			}
 			if (argumentParser.hasFlag("-text")) {
 				try {
 					// builds wordCounts map and invertedIndex
-					if (safe != null && queue != null) {
+					if (argumentParser.hasFlag("-incremental")) { // only parses files changed since the last run
+						Path manifest = argumentParser.getPath("-incremental", Path.of("index.manifest"));
+						if (safe != null && queue != null) {
+							InvertedIndexBuilder.threadedIncrementalBuild(queue, argumentParser.getPath("-text", null),
+									manifest, safe);
+						} else {
+							InvertedIndexBuilder.incrementalBuild(argumentParser.getPath("-text", null), manifest,
+									invertedIndex);
+						}
+					} else if (safe != null && queue != null && argumentParser.hasFlag("-pipeline")) {
+						// reads, stems, and merges files in separate stages
+						InvertedIndexBuilder.pipelinedBuild(queue, argumentParser.getPath("-text", null), safe);
+					} else if (safe != null && queue != null) {
 						InvertedIndexBuilder.threadedBuild(queue, argumentParser.getPath("-text", null),
 								safe);
 					} else {
@@ -75,6 +134,14 @@ public class Driver {
 				}
 			}
 
+			if (argumentParser.hasFlag("-saveindex")) {
+				try {
+					IndexFile.write(invertedIndex, argumentParser.getPath("-saveindex", Path.of("index.bin")));
+				} catch (IOException e) {
+					System.out.println("Error writing index file.");
+				}
+			}
+
 			if (argumentParser.hasFlag("-query")) {
 				boolean isPartial = argumentParser.hasFlag("-partial");
 
@@ -111,6 +178,16 @@ public class Driver {
 					System.out.println("Error writing to file (JsonWriter).");
 				}
 			}
+
+			if (argumentParser.hasFlag("-trace") && searchResults instanceof MultithreadedSearchResults traced) {
+				try {
+					// slow-query log goes next to the results, queries at or over -trace milliseconds are logged
+					Path results = argumentParser.getPath("-results", Path.of("results.json"));
+					traced.outputTraces(results.resolveSibling("slow-queries.json"), argumentParser.getDouble("-trace", 10));
+				} catch (IOException e) {
+					System.out.println("Error writing slow-query log.");
+				}
+			}
 			
 			if (argumentParser.hasFlag("-server")) {
 				try {
@@ -129,6 +206,14 @@ public class Driver {
 			}
 		}
 
+		if (argumentParser.hasFlag("-metrics")) { // after the queue joins, so every task is counted
+			try {
+				Metrics.writeJson(argumentParser.getPath("-metrics", Path.of("metrics.json")));
+			} catch (IOException e) {
+				System.out.println("Error writing metrics.");
+			}
+		}
+
 		// calculate time elapsed and output
 		long elapsed = Duration.between(start, Instant.now()).toMillis();
 		double seconds = (double) elapsed / Duration.ofSeconds(1).toMillis();
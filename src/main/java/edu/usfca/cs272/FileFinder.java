@@ -1,10 +1,15 @@
 package edu.usfca.cs272;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -30,10 +35,19 @@ public class FileFinder {
 	 *
 	 * @see Files#walk(Path, FileVisitOption...)
 	 */
-	public static final Predicate<Path> IS_TEXT = p -> {
-		String lower = String.valueOf(p).toLowerCase();
-		return Files.isRegularFile(p) && ((lower.endsWith(".txt") || lower.endsWith(".text")));
-	};
+	public static final Predicate<Path> IS_TEXT = p -> Files.isRegularFile(p) && hasTextExtension(p);
+
+	/**
+	 * Checks if a path ends in a .txt or .text extension (case-insensitive),
+	 * without checking what the path is
+	 *
+	 * @param path the path to check
+	 * @return true if the path has a text extension, else false
+	 */
+	private static boolean hasTextExtension(Path path) {
+		String lower = String.valueOf(path).toLowerCase();
+		return lower.endsWith(".txt") || lower.endsWith(".text");
+	}
 
 	/**
 	 * Returns a stream of all paths within the starting path that match the
@@ -109,4 +123,125 @@ public class FileFinder {
 
 	}
 
+	/**
+	 * Finds the same text files as {@link #listText(Path)}, but walks the
+	 * directories in parallel on a work queue and passes each text file to the
+	 * action as soon as it is found, instead of collecting a list first. Every
+	 * directory is listed by its own task, which queues a task for each of its
+	 * subdirectories. Symbolic links are followed, and a link back to one of its
+	 * own parent directories is skipped instead of walked forever.
+	 *
+	 * This method returns once the walk has started. The action is called by the
+	 * worker threads, so it must be thread-safe, and the walk is done once
+	 * {@link WorkQueue#finish()} returns.
+	 *
+	 * @param queue  the work queue to walk the directories on
+	 * @param start  the initial path to search
+	 * @param action action to perform on every text file
+	 * @throws IOException if an IO error occurs reading the initial path
+	 *
+	 * @see #listText(Path)
+	 */
+	public static void walkText(WorkQueue queue, Path start, Consumer<Path> action) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(start, BasicFileAttributes.class);
+		if (attributes.isRegularFile()) { // if single file, use file
+			action.accept(start);
+		} else if (attributes.isDirectory()) {
+			queue.execute(new WalkTask(queue, start, List.of(fileKey(start, attributes)), action));
+		}
+	}
+
+	/**
+	 * Returns an object that identifies a directory, however it was reached
+	 *
+	 * @param path       the directory path
+	 * @param attributes attributes already read for the directory
+	 * @return the file key of the directory, or its real path if it has none
+	 * @throws IOException if an IO error occurs
+	 */
+	private static Object fileKey(Path path, BasicFileAttributes attributes) throws IOException {
+		Object key = attributes.fileKey();
+		return key != null ? key : path.toRealPath();
+	}
+
+	/**
+	 * Class for Runnable 'list directory' task objects to execute
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class WalkTask implements Runnable {
+
+		/**
+		 * Work queue to add subdirectory tasks to
+		 */
+		private final WorkQueue queue;
+
+		/**
+		 * Directory to list
+		 */
+		private final Path directory;
+
+		/**
+		 * File keys of the directory and every directory above it in the walk
+		 */
+		private final List<Object> ancestors;
+
+		/**
+		 * Action to perform on every text file
+		 */
+		private final Consumer<Path> action;
+
+		/**
+		 * Constructor for tasks
+		 *
+		 * @param queue     work queue to add subdirectory tasks to
+		 * @param directory directory to list
+		 * @param ancestors file keys of the directory and the directories above it
+		 * @param action    action to perform on every text file
+		 */
+		public WalkTask(WorkQueue queue, Path directory, List<Object> ancestors, Consumer<Path> action) {
+			this.queue = queue;
+			this.directory = directory;
+			this.ancestors = ancestors;
+			this.action = action;
+		}
+
+		@Override
+		public void run() {
+			try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+				for (Path path : paths) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					} catch (IOException e) { // broken link, which is not a text file
+						continue;
+					}
+
+					if (attributes.isDirectory()) {
+						Object key = fileKey(path, attributes);
+						if (ancestors.contains(key)) { // link loop, every file below was already found
+							continue;
+						}
+
+						ArrayList<Object> chain = new ArrayList<>(ancestors.size() + 1);
+						chain.addAll(ancestors);
+						chain.add(key);
+						queue.execute(new WalkTask(queue, path, chain, action));
+					} else if (attributes.isRegularFile() && hasTextExtension(path)) {
+						action.accept(path);
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				System.out.printf("Error reading directory: %s%n", directory.toString());
+			}
+		}
+
+		@Override
+		public String toString() {
+			return directory.toString();
+		}
+
+	}
+
 }
@@ -1,7 +1,6 @@
 package edu.usfca.cs272;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -12,6 +11,7 @@ import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import opennlp.tools.stemmer.Stemmer;
@@ -32,6 +32,9 @@ public class FileStemmer {
 	/** Regular expression that matches non-alphabetic characters. **/
 	public static final Pattern CLEAN_REGEX = Pattern.compile("(?U)[^\\p{Alpha}\\p{Space}]+");
 
+	/** Per-thread tokenizer used to parse text, so its buffers are reused. **/
+	private static final ThreadLocal<TextTokenizer> TOKENIZERS = ThreadLocal.withInitial(TextTokenizer::new);
+
 	/**
 	 * Cleans the text by removing any non-alphabetic characters (e.g. non-letters
 	 * like digits, punctuation, symbols, and diacritical marks like the umlaut) and
@@ -63,10 +66,28 @@ public class FileStemmer {
 	 * @return an array of {@link String} objects
 	 *
 	 * @see #clean(String)
-	 * @see #parse(String)
+	 * @see #split(String)
+	 * @see #parse(CharSequence, Consumer)
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<>();
+		parse(text, word -> words.add(word.toString()));
+		return words.toArray(new String[0]);
+	}
+
+	/**
+	 * Parses the text into clean words and passes each one to the sink, giving
+	 * the same words as {@link #parse(String)} without regular expressions or
+	 * intermediate strings. The word passed to the sink is reused, so it is only
+	 * valid until the sink returns.
+	 *
+	 * @param text the text to clean and split
+	 * @param sink action to perform on every clean word
+	 *
+	 * @see TextTokenizer#tokenize(CharSequence, Consumer)
+	 */
+	public static void parse(CharSequence text, Consumer<CharSequence> sink) {
+		TOKENIZERS.get().tokenize(text, sink);
 	}
 
 	/**
@@ -77,17 +98,12 @@ public class FileStemmer {
 	 * @param stemmer the stemmer to use
 	 * @param stems   the collection to add stems
 	 *
-	 * @see #parse(String)
+	 * @see #parse(CharSequence, Consumer)
 	 * @see Stemmer#stem(CharSequence)
 	 * @see Collection#add(Object)
 	 */
 	public static void addStems(String line, Stemmer stemmer, Collection<String> stems) {
-		String[] words = parse(line);
-
-		for (String word : words) {
-			String stem = stemmer.stem(word).toString();
-			stems.add(stem);
-		}
+		parse(line, word -> stems.add(stemmer.stem(word).toString()));
 	}
 
 	/**
@@ -114,12 +130,12 @@ public class FileStemmer {
 	 * @param line the line of words to parse and stem
 	 * @return a list of cleaned and stemmed words in parsed order
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
+	 * @see StemCache#english()
 	 * @see ALGORITHM#ENGLISH
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(ENGLISH));
+		return listStems(line, StemCache.english());
 	}
 
 	/**
@@ -137,7 +153,7 @@ public class FileStemmer {
 	 */
 	public static ArrayList<String> listStems(Path input) throws IOException {
 		ArrayList<String> list = new ArrayList<>();
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.english();
 
 		try (BufferedReader in = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
@@ -173,12 +189,12 @@ public class FileStemmer {
 	 * @param line the line of words to parse and stem
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
+	 * @see StemCache#english()
 	 * @see ALGORITHM#ENGLISH
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(ENGLISH));
+		return uniqueStems(line, StemCache.english());
 	}
 
 	/**
@@ -196,7 +212,7 @@ public class FileStemmer {
 	 */
 	public static TreeSet<String> uniqueStems(Path input) throws IOException {
 		TreeSet<String> list = new TreeSet<>();
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.english();
 
 		try (BufferedReader in = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
@@ -225,7 +241,7 @@ public class FileStemmer {
 	 */
 	public static ArrayList<TreeSet<String>> listUniqueStems(Path input) throws IOException {
 		ArrayList<TreeSet<String>> list = new ArrayList<>();
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.english();
 
 		try (BufferedReader in = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
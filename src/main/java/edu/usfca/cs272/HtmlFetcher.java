@@ -32,6 +32,9 @@ public class HtmlFetcher {
 	/** Used to format dates (already thread-safe). */
 	public static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(longDateFormat);
 
+	/** Time to fetch each url. */
+	private static final Metrics.Histogram FETCH_TIME = Metrics.histogram("crawl.fetch");
+
 	/**
 	 * Returns {@code true} if and only if there is a "Content-Type" header and the
 	 * first value of that header starts with the value "text/html"
@@ -171,6 +174,7 @@ public class HtmlFetcher {
 	 *         resource is not html
 	 */
 	public static String fetch(URL url, int redirects, ThreadSafeInvertedIndex index) {
+		long start = System.nanoTime();
 		String html = null;
 
 		try (Socket socket = HttpsFetcher.openConnection(url);
@@ -211,6 +215,8 @@ public class HtmlFetcher {
 
 		} catch (IOException e) {
 			return null;
+		} finally {
+			FETCH_TIME.recordSince(start); // includes any redirects
 		}
 	}
 
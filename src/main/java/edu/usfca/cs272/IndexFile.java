@@ -0,0 +1,473 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Reads and writes an inverted index as a compact binary file, so an index can
+ * be reopened without parsing or crawling again. All numbers are big-endian
+ * ints, and strings are a byte length followed by UTF-8 bytes (length -1 for
+ * null). The file holds, in order:
+ *
+ * <ol>
+ * <li>the magic number and format version</li>
+ * <li>the document table: the number of documents, then the location and word
+ * count of each document (its position in the table is its document id)</li>
+ * <li>the term dictionary in sorted order: the number of stems, then each stem
+ * with its posting block (the number of documents, then each document id and
+ * its encoded positions, see {@link PositionList#writeTo})</li>
+ * <li>the HTML statistics: the number of urls, then each url and its values</li>
+ * <li>the HTML snippets: the number of urls, then each url and its snippet</li>
+ * </ol>
+ *
+ * The file is read through memory mappings of one window at a time, so it may
+ * be larger than 2GB, and positions are copied in their encoded form without
+ * decoding them.
+ *
+ * @author Athene Marston
+ */
+public class IndexFile {
+
+	/**
+	 * Marks the start of an index file ("SEIX")
+	 */
+	public static final int MAGIC = 0x53454958;
+
+	/**
+	 * Version of the file format
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Most bytes of an index file that are mapped at once
+	 */
+	private static final int WINDOW_SIZE = 1 << 28;
+
+	/**
+	 * Writes an index to a binary index file. Thread-safe indexes are copied
+	 * first, so the file is written from a consistent view (page information is
+	 * copied separately, so it may include pages added after the copy). Indexes
+	 * with removed documents are also copied, so the file has no gaps in its
+	 * document ids.
+	 *
+	 * @param index the index to write
+	 * @param path  the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void write(InvertedIndex index, Path path) throws IOException {
+		InvertedIndex source = index;
+		Map<String, String[]> statistics = Collections.emptyMap();
+		Map<String, String> snippets = Collections.emptyMap();
+
+		if (index instanceof ThreadSafeInvertedIndex safe) {
+			source = safe.copy();
+			statistics = safe.copyHTMLStatistics(); // includes pages not published yet
+			snippets = safe.copyHTMLSnippets();
+		} else if (!index.isCompact()) {
+			source = new InvertedIndex(index);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(source.countsSize());
+			for (int doc = 0; doc < source.countsSize(); doc++) {
+				writeString(source.getLocation(doc), out);
+				out.writeInt(source.getWordCount(doc));
+			}
+
+			out.writeInt(source.size());
+			var iterator = source.postings();
+			while (iterator.hasNext()) {
+				var entry = iterator.next();
+				PostingList postings = entry.getValue();
+
+				writeString(entry.getKey(), out);
+				out.writeInt(postings.size());
+				for (int i = 0; i < postings.size(); i++) {
+					out.writeInt(postings.doc(i));
+					postings.positions(i).writeTo(out);
+				}
+			}
+
+			out.writeInt(statistics.size());
+			for (var entry : statistics.entrySet()) {
+				writeString(entry.getKey(), out);
+				String[] values = entry.getValue();
+				out.writeInt(values.length);
+				for (String value : values) {
+					writeString(value, out);
+				}
+			}
+
+			out.writeInt(snippets.size());
+			for (var entry : snippets.entrySet()) {
+				writeString(entry.getKey(), out);
+				writeString(entry.getValue(), out);
+			}
+		}
+	}
+
+	/**
+	 * Reads a binary index file and adds everything in it to an index. The file
+	 * is read straight into the index, holding every write lock of a thread-safe
+	 * index for the whole read, which is then published once. A segmented index
+	 * is instead given everything in the file as one new segment.
+	 *
+	 * @param path  the file path to read
+	 * @param index the index to add to
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 *                     file
+	 */
+	public static void read(Path path, InvertedIndex index) throws IOException {
+		read(path, index, location -> true);
+	}
+
+	/**
+	 * Reads a binary index file and adds the documents whose location passes a
+	 * filter to an index, as in {@link #read(Path, InvertedIndex)}. Positions of
+	 * other documents are skipped over. If the file turns out to be corrupt, the
+	 * documents read before the error may already be in the index.
+	 *
+	 * @param path  the file path to read
+	 * @param index the index to add to
+	 * @param keep  filter returning true for the locations to add
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 *                     file
+	 */
+	public static void read(Path path, InvertedIndex index, Predicate<String> keep) throws IOException {
+		if (index instanceof SegmentedInvertedIndex segmented) { // segments are only added whole
+			InvertedIndex segment = new InvertedIndex();
+			load(path, segment, segmented, keep);
+			segmented.addAll(segment);
+			segmented.publish();
+			return;
+		}
+
+		if (index instanceof ThreadSafeInvertedIndex safe) {
+			safe.lockAll();
+			try {
+				load(path, safe, safe, keep);
+			} finally {
+				safe.unlockAll();
+			}
+			safe.publish();
+		} else {
+			load(path, index, null, keep);
+		}
+	}
+
+	/**
+	 * Reads the documents and posting lists of an index file into an index
+	 * without any locking, and the page information into another
+	 *
+	 * @param path  the file path to read
+	 * @param index the index to add the documents and posting lists to
+	 * @param pages the index to add the page information to, or null to skip it
+	 * @param keep  filter returning true for the locations to add
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 *                     file
+	 */
+	private static void load(Path path, InvertedIndex index, ThreadSafeInvertedIndex pages, Predicate<String> keep)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedReader reader = new MappedReader(channel, WINDOW_SIZE);
+			readHeader(path, reader);
+
+			int documents = reader.readCount();
+			int[] remap = new int[documents];
+			for (int doc = 0; doc < documents; doc++) {
+				String location = reader.readString();
+				int count = reader.getInt();
+				remap[doc] = keep.test(location) ? index.addLocation(location, count) : -1;
+			}
+
+			int terms = reader.readCount();
+			for (int term = 0; term < terms; term++) {
+				String word = reader.readString();
+				int size = reader.readCount();
+				PostingList postings = new PostingList();
+
+				for (int i = 0; i < size; i++) {
+					int doc = reader.getInt();
+					if (doc < 0 || doc >= documents) {
+						throw new IOException("Invalid document id in index file: " + path);
+					}
+					PositionList positions = reader.readPositions();
+					if (remap[doc] >= 0) {
+						postings.add(doc, positions);
+					}
+				}
+				if (postings.size() > 0) { // every document may have been filtered out
+					index.addPostings(word, postings, remap);
+				}
+			}
+
+			if (pages != null) {
+				readPages(reader, pages, keep);
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt index file: " + path, e);
+		}
+	}
+
+	/**
+	 * Checks the magic number and version at the start of an index file
+	 *
+	 * @param path   the file path being read
+	 * @param reader the reader at the start of the file
+	 * @throws IOException if the file is not a supported index file
+	 */
+	private static void readHeader(Path path, MappedReader reader) throws IOException {
+		if (reader.size() < 8 || reader.getInt() != MAGIC) {
+			throw new IOException("Not an index file: " + path);
+		}
+		if (reader.getInt() != VERSION) {
+			throw new IOException("Unsupported index file version: " + path);
+		}
+	}
+
+	/**
+	 * Reads the HTML statistics and snippets at the end of an index file
+	 *
+	 * @param reader the reader positioned after the posting lists
+	 * @param index  the index to add the page information to
+	 * @param keep   filter returning true for the urls to add
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void readPages(MappedReader reader, ThreadSafeInvertedIndex index, Predicate<String> keep)
+			throws IOException {
+		int statistics = reader.readCount();
+		for (int i = 0; i < statistics; i++) {
+			String url = reader.readString();
+			String[] values = new String[reader.readCount()];
+			for (int j = 0; j < values.length; j++) {
+				values[j] = reader.readString();
+			}
+			if (keep.test(url)) {
+				index.addHTMLStatistics(url, values);
+			}
+		}
+
+		int snippets = reader.readCount();
+		for (int i = 0; i < snippets; i++) {
+			String url = reader.readString();
+			String snippet = reader.readString();
+			if (keep.test(url)) {
+				index.addHTMLSnippet(url, snippet);
+			}
+		}
+	}
+
+	/**
+	 * Writes a string as its byte length and UTF-8 bytes
+	 *
+	 * @param text the string to write, may be null
+	 * @param out  the output to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	static void writeString(String text, DataOutputStream out) throws IOException {
+		if (text == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = text.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(String, DataOutputStream)}
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the string that was read, may be null
+	 */
+	static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Reads a count, which must not be negative
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the count that was read
+	 */
+	static int readCount(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		if (count < 0) {
+			throw new IllegalArgumentException("Negative count: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads an index file through a memory mapping of one window at a time, so
+	 * files larger than a single buffer (2GB) can be read. A value that does not
+	 * fit in the rest of the current window is read from a new window starting
+	 * at that value.
+	 *
+	 * @author Athene Marston
+	 */
+	private static class MappedReader {
+
+		/**
+		 * Channel of the file being read
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * Size of the file in bytes
+		 */
+		private final long size;
+
+		/**
+		 * Most bytes mapped at once, unless a single value is larger
+		 */
+		private final int window;
+
+		/**
+		 * Offset in the file of the start of the current window
+		 */
+		private long offset;
+
+		/**
+		 * Current window
+		 */
+		private MappedByteBuffer buffer;
+
+		/**
+		 * Initializes a reader at the start of a file
+		 *
+		 * @param channel channel of the file to read
+		 * @param window  most bytes to map at once
+		 * @throws IOException if an IO error occurs
+		 */
+		public MappedReader(FileChannel channel, int window) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			this.window = window;
+			this.offset = 0;
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, window));
+		}
+
+		/**
+		 * Returns the size of the file
+		 *
+		 * @return size in bytes
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * Returns the current window, mapping a new one first if fewer bytes than
+		 * needed are left in it
+		 *
+		 * @param bytes number of bytes about to be read
+		 * @return buffer with at least that many bytes remaining
+		 * @throws IOException if an IO error occurs
+		 * @throws BufferUnderflowException if the file ends first
+		 */
+		private ByteBuffer need(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				long position = offset + buffer.position();
+				if (size - position < bytes) {
+					throw new BufferUnderflowException();
+				}
+				offset = position;
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(size - position, Math.max(window, bytes)));
+			}
+			return buffer;
+		}
+
+		/**
+		 * Reads an int
+		 *
+		 * @return the int that was read
+		 * @throws IOException if an IO error occurs
+		 */
+		public int getInt() throws IOException {
+			return need(Integer.BYTES).getInt();
+		}
+
+		/**
+		 * Reads a count, which must not be negative
+		 *
+		 * @return the count that was read
+		 * @throws IOException if an IO error occurs
+		 */
+		public int readCount() throws IOException {
+			return IndexFile.readCount(need(Integer.BYTES));
+		}
+
+		/**
+		 * Reads a string written by
+		 * {@link IndexFile#writeString(String, DataOutputStream)}
+		 *
+		 * @return the string that was read, may be null
+		 * @throws IOException if an IO error occurs
+		 */
+		public String readString() throws IOException {
+			int length = getInt();
+			if (length < 0) {
+				return null;
+			}
+
+			byte[] bytes = new byte[length];
+			need(length).get(bytes);
+			return new String(bytes, UTF_8);
+		}
+
+		/**
+		 * Returns the number of bytes of the encoded position list at the current
+		 * position, including its header
+		 *
+		 * @return size in bytes
+		 * @throws IOException if an IO error occurs
+		 */
+		private int positionsLength() throws IOException {
+			ByteBuffer header = need(3 * Integer.BYTES);
+			int length = header.getInt(header.position() + 2 * Integer.BYTES);
+			if (length < 0 || length > Integer.MAX_VALUE - 3 * Integer.BYTES) {
+				throw new IllegalArgumentException("Invalid encoded position list.");
+			}
+			return 3 * Integer.BYTES + length;
+		}
+
+		/**
+		 * Reads a position list written by {@link PositionList#writeTo}
+		 *
+		 * @return the list that was read
+		 * @throws IOException if an IO error occurs
+		 */
+		public PositionList readPositions() throws IOException {
+			return PositionList.readFrom(need(positionsLength()));
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Records the size, modification time, and content hash of every text file in
+ * an index, so a later build can tell which files changed. The manifest is
+ * stored as a binary file next to the index file it describes.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class IndexManifest {
+
+	/**
+	 * Marks the start of a manifest file ("SEMF")
+	 */
+	public static final int MAGIC = 0x53454D46;
+
+	/**
+	 * Version of the file format
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * State of each file, by path
+	 */
+	private final TreeMap<String, FileState> files;
+
+	/**
+	 * Initializes an empty manifest
+	 */
+	public IndexManifest() {
+		this.files = new TreeMap<>();
+	}
+
+	/**
+	 * Returns the state of a file
+	 *
+	 * @param path file path
+	 * @return state of the file, null if DNE
+	 */
+	public FileState get(String path) {
+		return files.get(path);
+	}
+
+	/**
+	 * Sets the state of a file
+	 *
+	 * @param path  file path
+	 * @param state state of the file
+	 */
+	public void put(String path, FileState state) {
+		files.put(path, state);
+	}
+
+	/**
+	 * Returns the state of every file, by path
+	 *
+	 * @return unmodifiable sorted map of paths to file states
+	 */
+	public Map<String, FileState> files() {
+		return Collections.unmodifiableMap(files);
+	}
+
+	/**
+	 * Returns the number of files in the manifest
+	 *
+	 * @return number of files
+	 */
+	public int size() {
+		return files.size();
+	}
+
+	/**
+	 * Writes the manifest to a file, replacing it atomically
+	 *
+	 * @param path the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public void write(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(files.size());
+
+			for (var entry : files.entrySet()) {
+				FileState state = entry.getValue();
+				IndexFile.writeString(entry.getKey(), out);
+				out.writeLong(state.size);
+				out.writeLong(state.modified);
+				out.writeLong(state.hash);
+			}
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a manifest file
+	 *
+	 * @param path the file path to read
+	 * @return the manifest that was read
+	 * @throws IOException if an IO error occurs or the file is not a valid
+	 *                     manifest
+	 */
+	public static IndexManifest read(Path path) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("Not a manifest file: " + path);
+			}
+
+			int size = IndexFile.readCount(buffer);
+			for (int i = 0; i < size; i++) {
+				String file = IndexFile.readString(buffer);
+				manifest.put(file, new FileState(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt manifest file: " + path, e);
+		}
+		return manifest;
+	}
+
+	/**
+	 * The size, modification time, and content hash of a file
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	public static class FileState {
+
+		/**
+		 * Size of the file in bytes
+		 */
+		private final long size;
+
+		/**
+		 * Last modification time in milliseconds since the epoch
+		 */
+		private final long modified;
+
+		/**
+		 * CRC32C checksum of the file contents
+		 */
+		private final long hash;
+
+		/**
+		 * Initializes a file state
+		 *
+		 * @param size     size of the file in bytes
+		 * @param modified last modification time in milliseconds
+		 * @param hash     checksum of the file contents
+		 */
+		public FileState(long size, long modified, long hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		/**
+		 * Reads the current state of a file, hashing its contents
+		 *
+		 * @param path       file path
+		 * @param attributes attributes already read for the file
+		 * @return current state of the file
+		 * @throws IOException if an IO error occurs
+		 */
+		public static FileState of(Path path, BasicFileAttributes attributes) throws IOException {
+			return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), hash(path));
+		}
+
+		/**
+		 * Checks if a file still has this size and modification time, in which case
+		 * it is assumed to be unchanged without hashing it
+		 *
+		 * @param attributes current attributes of the file
+		 * @return true if the size and modification time match, else false
+		 */
+		public boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+		}
+
+		/**
+		 * Checks if a file has the same size and contents as this state
+		 *
+		 * @param other state of the file to compare
+		 * @return true if the size and hash match, else false
+		 */
+		public boolean sameContents(FileState other) {
+			return size == other.size && hash == other.hash;
+		}
+
+		/**
+		 * Computes the checksum of a file's contents
+		 *
+		 * @param path file path
+		 * @return checksum of the contents
+		 * @throws IOException if an IO error occurs
+		 */
+		private static long hash(Path path) throws IOException {
+			CRC32C crc = new CRC32C();
+			byte[] buffer = new byte[1 << 16];
+
+			try (InputStream in = Files.newInputStream(path)) {
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					crc.update(buffer, 0, read);
+				}
+			}
+			return crc.getValue();
+		}
+
+		@Override
+		public String toString() {
+			return "size " + size + ", modified " + modified + ", hash " + Long.toHexString(hash);
+		}
+	}
+}
@@ -3,15 +3,22 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Class for Map data structure (stores file names and counts)
@@ -21,65 +28,158 @@ import java.util.TreeSet;
 public class InvertedIndex {
 
 	/**
-	 * Stores paths and their word counts (key = path, val = word count)
+	 * Most posting lists a limited search will prune over, since every candidate
+	 * document checks each list
 	 */
-	private final Map<String, Integer> counts;
+	private static final int MAX_PRUNED_LISTS = 32;
 
 	/**
-	 * Stores word stems and a map of files they exist in and the indexes they occur
+	 * Allowance for rounding when comparing summed score bounds to a score
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private static final double BOUND_EPSILON = 1e-9;
+
+	/**
+	 * Removed documents are purged from the posting lists once more than one in
+	 * this many documents is removed
+	 */
+	private static final int PURGE_RATIO = 8;
+
+	/**
+	 * Time to run each query
+	 */
+	private static final Metrics.Histogram SEARCH_TIME = Metrics.histogram("search.query");
+
+	/**
+	 * Assigns document ids to paths, so each path is only stored once
+	 */
+	private final LocationDictionary locations;
+
+	/**
+	 * Stores word counts indexed by document id
+	 */
+	private int[] counts;
+
+	/**
+	 * Stores the documents each word stem exists in and the (compressed) positions
+	 * they occur, split by stem hash into stripes
+	 */
+	private final PostingIndex[] stripes;
+
+	/**
+	 * Per-thread scratch space for adding up matches while searching
+	 */
+	private final ThreadLocal<ScoreAccumulator> accumulators;
+
+	/**
+	 * Number of removed documents still in the posting lists
+	 */
+	private int tombstones;
+
+	/**
+	 * Ids of the removed documents still in the posting lists
+	 */
+	private final BitSet tombstoned;
 
 	/**
 	 * Initializes map
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<>();
-		this.counts = new TreeMap<>();
+		this(1);
 	}
 
 	/**
-	 * Updates file path's word stem count in "counts" map
+	 * Initializes map with the word stems split into stripes, so subclasses can
+	 * guard each stripe separately
 	 * 
-	 * @param location file path
+	 * @param stripes number of stripes
 	 */
-	private void addCounts(String location) {
-		Integer count = counts.get(location);
-		if (count == null) {
-			counts.put(location, 1);
-		} else {
-			counts.put(location, count + 1);
+	protected InvertedIndex(int stripes) {
+		this.locations = new LocationDictionary();
+		this.counts = new int[16];
+		this.stripes = new PostingIndex[stripes];
+		this.accumulators = ThreadLocal.withInitial(ScoreAccumulator::new);
+		this.tombstones = 0;
+		this.tombstoned = new BitSet();
+
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new PostingIndex();
 		}
 	}
 
 	/**
-	 * Adds word stem position if not in list
+	 * Initializes map with a deep copy of another index, so the copy is not
+	 * affected by later changes to the other index. Removed documents are left
+	 * out of the copy, and the remaining document ids keep their order (they are
+	 * the same ids if nothing was removed). All word stems are kept in a single
+	 * stripe.
 	 * 
-	 * @param word     word stem
-	 * @param location string of path
-	 * @param position position of word stem
-	 * @return true if added, else false
+	 * @param other InvertedIndex to copy
 	 */
-	public boolean addInvertedIndex(String word, String location, Integer position) {
-		TreeMap<String, TreeSet<Integer>> map = index.get(word);
+	public InvertedIndex(InvertedIndex other) {
+		this(1);
+		int[] remap = this.locations.addAll(other.locations); // same order, so ids only shift past removed ones
+		this.counts = new int[Math.max(16, this.locations.size())];
+		for (int i = 0; i < remap.length; i++) {
+			if (remap[i] >= 0) {
+				this.counts[remap[i]] = other.counts[i];
+			}
+		}
 
-		if (map == null) {
-			map = new TreeMap<>();
-			index.put(word, map);
+		var iterator = other.postings();
+		while (iterator.hasNext()) { // sorted order, so new term ids are 0, 1, 2...
+			var entry = iterator.next();
+			stripes[0].put(entry.getKey(), new PostingList(entry.getValue(), remap));
 		}
+	}
 
-		TreeSet<Integer> set = map.get(location);
+	/**
+	 * Returns the stripe a word stem is stored in
+	 * 
+	 * @param word word stem
+	 * @return index of the stripe
+	 */
+	protected int stripeOf(String word) {
+		return stripes.length == 1 ? 0 : Math.floorMod(word.hashCode(), stripes.length);
+	}
 
-		if (set == null) {
-			set = new TreeSet<>();
-			map.put(location, set);
+	/**
+	 * Returns the number of stripes the word stems are split into
+	 * 
+	 * @return number of stripes
+	 */
+	protected int stripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Updates document's word stem count in "counts" array
+	 * 
+	 * @param doc    document id
+	 * @param amount number of word stems to add
+	 */
+	private void addCounts(int doc, int amount) {
+		if (doc >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(doc + 1, counts.length * 2));
 		}
+		counts[doc] += amount;
+	}
 
-		boolean modified = set.add(position);
+	/**
+	 * Adds word stem position if not in list
+	 * 
+	 * @param word     word stem
+	 * @param location string of path
+	 * @param position position of word stem
+	 * @return true if added, else false
+	 */
+	public boolean addInvertedIndex(String word, String location, Integer position) {
+		PostingList postings = getOrCreatePostings(word);
+		int doc = locations.add(location);
+		boolean modified = postings.add(doc, position.intValue());
 
-		// update word in counts map
+		// update word in counts
 		if (modified) {
-			addCounts(location);
+			addCounts(doc, 1);
 		}
 
 		return modified;
@@ -94,59 +194,272 @@ public class InvertedIndex {
 	 * @return true if all added, else false
 	 */
 	public boolean addAll(List<String> words, String location) {
-		boolean result = true;
+		HashMap<String, PositionList> positions = new HashMap<>();
 
-		// add to inverted index
-		Integer i = 1; // counter for wordstem position
-		for (String s : words) { // for every wordstem in file
-			if (addInvertedIndex(s, location, i) == false) {
-				result = false;
-			}
+		int i = 1; // counter for wordstem position
+		for (String s : words) { // collect the positions of every wordstem first
+			positions.computeIfAbsent(s, word -> new PositionList()).add(i);
 			i++;
 		}
-		return result;
+		return addPositions(location, positions);
+	}
+
+	/**
+	 * Adds the positions of every word stem in a single file at once. Each stem's
+	 * posting list is only looked up once and given the whole list of positions,
+	 * and the word count is only updated once. The position lists are added
+	 * rather than copied, and should not be used afterwards.
+	 * 
+	 * @param location  String of file name
+	 * @param positions positions of each word stem in the file
+	 * @return true if all added, else false
+	 */
+	public boolean addPositions(String location, Map<String, PositionList> positions) {
+		if (positions.isEmpty()) {
+			return true;
+		}
+
+		if (containsLocation(location)) { // add one at a time, so only new positions are counted
+			boolean result = true;
+			for (var entry : positions.entrySet()) {
+				for (int position : entry.getValue()) {
+					result &= addInvertedIndex(entry.getKey(), location, position);
+				}
+			}
+			return result;
+		}
+
+		int count = 0;
+		for (PositionList list : positions.values()) {
+			count += list.size();
+		}
+
+		int doc = addLocation(location, count);
+		for (var entry : positions.entrySet()) {
+			getOrCreatePostings(entry.getKey()).add(doc, entry.getValue());
+		}
+		return true;
 	}
 
 	/**
 	 * Adds another inverted index to this Should not be used with overlapping
-	 * positions for the same location
+	 * positions for the same location. The other index should not be used
+	 * afterwards, since its position lists may now be shared with this index.
 	 * 
 	 * @param other InvertedIndex to merge
 	 */
 	public void addAll(InvertedIndex other) {
+		int[] remap = addLocations(other);
 
-		for (var entry : other.index.entrySet()) {
-			String word = entry.getKey(); // for every word
-			TreeMap<String, TreeSet<Integer>> wordMap = index.get(word);
-			TreeMap<String, TreeSet<Integer>> otherWordMap = entry.getValue();
+		var iterator = other.postings();
+		while (iterator.hasNext()) { // for every word
+			var entry = iterator.next();
+			addPostings(entry.getKey(), entry.getValue(), remap);
+		}
 
-			if (wordMap == null) { // if not in map, add all data
-				index.put(word, otherWordMap);
-			} else {
-				for (var wordEntry : otherWordMap.entrySet()) {
-					String file = wordEntry.getKey(); // else, if in map, for every file
-					TreeSet<Integer> locations = wordMap.get(file);
-
-					if (locations == null) { // if not in map, add file and locations
-						wordMap.put(file, wordEntry.getValue());
-					} else { // else, if in map, add locations to set
-						locations.addAll(wordEntry.getValue());
-					}
-				}
+	}
+
+	/**
+	 * Adds the locations and word counts of another inverted index, the first step
+	 * of {@link #addAll(InvertedIndex)}
+	 * 
+	 * @param other InvertedIndex to merge
+	 * @return array mapping the other index's document ids to ids in this index
+	 */
+	protected int[] addLocations(InvertedIndex other) {
+		int[] remap = locations.addAll(other.locations); // other's document ids to ours
+
+		for (int i = 0; i < remap.length; i++) {
+			if (remap[i] >= 0) {
+				addCounts(remap[i], other.counts[i]);
 			}
 		}
+		return remap;
+	}
 
-		for (var entry : other.counts.entrySet()) {
-			String path = entry.getKey();
-			Integer count = counts.get(path);
+	/**
+	 * Adds a location with its word count
+	 * 
+	 * @param location file path or url
+	 * @param count    number of word stems to add to its count
+	 * @return document id of the location
+	 */
+	protected int addLocation(String location, int count) {
+		int doc = locations.add(location);
+		addCounts(doc, count);
+		return doc;
+	}
 
-			if (count == null) {
-				counts.put(path, entry.getValue());
-			} else {
-				counts.put(path, entry.getValue() + count);
+	/**
+	 * Returns the location of a document id
+	 * 
+	 * @param doc document id
+	 * @return file path or url of the document
+	 */
+	protected String getLocation(int doc) {
+		return locations.getLocation(doc);
+	}
+
+	/**
+	 * Returns the word stem count of a document id
+	 * 
+	 * @param doc document id
+	 * @return number of word stems in the document
+	 */
+	protected int getWordCount(int doc) {
+		return counts[doc];
+	}
+
+	/**
+	 * Adds the posting list of a word stem from another inverted index, the
+	 * second step of {@link #addAll(InvertedIndex)}
+	 * 
+	 * @param word     word stem
+	 * @param postings posting list of the stem in the other index
+	 * @param remap    array mapping the other index's document ids to ids in
+	 *                 this index
+	 */
+	protected void addPostings(String word, PostingList postings, int[] remap) {
+		getOrCreatePostings(word).addAll(postings, remap);
+	}
+
+	/**
+	 * Removes a location and all of its word stems. The location's document id
+	 * is only marked as removed (a tombstone), and searches skip it until enough
+	 * documents are removed to purge them from the posting lists.
+	 * 
+	 * @param location file path or url
+	 * @return true if the location was removed, false if location DNE
+	 */
+	public boolean removeLocation(String location) {
+		if (!removeDocument(location)) {
+			return false;
+		}
+
+		if (needsPurge()) {
+			purge();
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the word stems of a location, as if it was removed and then added
+	 * again with {@link #addAll(List, String)}
+	 * 
+	 * @param location file path or url
+	 * @param words    list of word stems in the location
+	 * @return true if all added, else false
+	 */
+	public boolean replaceLocation(String location, List<String> words) {
+		removeLocation(location);
+		return addAll(words, location);
+	}
+
+	/**
+	 * Marks the document id of a location as removed, the first step of
+	 * {@link #removeLocation(String)}
+	 * 
+	 * @param location file path or url
+	 * @return true if the location was removed, false if location DNE
+	 */
+	protected boolean removeDocument(String location) {
+		int doc = locations.remove(location);
+		if (doc < 0) {
+			return false;
+		}
+
+		counts[doc] = 0;
+		tombstoned.set(doc);
+		tombstones++;
+		return true;
+	}
+
+	/**
+	 * Checks if enough documents are removed that they should be purged from the
+	 * posting lists
+	 * 
+	 * @return true if the removed documents should be purged, else false
+	 */
+	protected boolean needsPurge() {
+		return tombstones > 0 && tombstones * PURGE_RATIO > locations.size();
+	}
+
+	/**
+	 * Returns the ids of the removed documents still in the posting lists
+	 * 
+	 * @return copy of the ids of the removed documents to purge
+	 */
+	protected BitSet tombstoned() {
+		return (BitSet) tombstoned.clone();
+	}
+
+	/**
+	 * Checks if no documents were removed, so the document ids have no gaps
+	 * 
+	 * @return true if every document id is in use, else false
+	 */
+	protected boolean isCompact() {
+		return locations.count() == locations.size();
+	}
+
+	/**
+	 * Removes the removed documents from every posting list, and the word stems
+	 * left without any documents
+	 */
+	public void purge() {
+		BitSet purged = tombstoned();
+		for (int i = 0; i < stripes.length; i++) {
+			purgeStripe(i);
+		}
+		clearTombstones(purged);
+	}
+
+	/**
+	 * Removes the removed documents from the posting lists of one stripe
+	 * 
+	 * @param stripe index of the stripe
+	 */
+	protected void purgeStripe(int stripe) {
+		stripes[stripe].removeDocuments(locations::isRemoved);
+	}
+
+	/**
+	 * Records that removed documents were purged from every stripe. Documents
+	 * removed after the purge started are still counted, since some stripes may
+	 * not have been purged of them.
+	 * 
+	 * @param purged ids of the removed documents when the purge started
+	 */
+	protected void clearTombstones(BitSet purged) {
+		tombstoned.andNot(purged);
+		tombstones = tombstoned.cardinality();
+	}
+
+	/**
+	 * Returns an iterator over every word stem and its posting list in sorted
+	 * stem order
+	 * 
+	 * @return iterator over the stems and posting lists
+	 */
+	protected Iterator<Entry<String, PostingList>> postings() {
+		if (stripes.length == 1 && tombstones == 0) {
+			return stripes[0].iterator();
+		}
+
+		ArrayList<Entry<String, PostingList>> postings = new ArrayList<>();
+		for (PostingIndex stripe : stripes) {
+			for (Entry<String, PostingList> entry : stripe) {
+				PostingList list = livePostings(entry.getValue());
+				if (list != null) {
+					postings.add(list == entry.getValue() ? entry : Map.entry(entry.getKey(), list));
+				}
 			}
 		}
 
+		if (stripes.length > 1) {
+			postings.sort(Entry.comparingByKey());
+		}
+		return postings.iterator();
 	}
 
 	/**
@@ -156,7 +469,20 @@ public class InvertedIndex {
 	 * @return true if counts map contains file, else false
 	 */
 	public boolean countsContains(String location) {
-		return counts.containsKey(location);
+		return containsLocation(location);
+	}
+
+	/**
+	 * Checks if a location is in this index itself. Unlike
+	 * {@link #countsContains(String)}, subclasses cannot redirect this to a
+	 * published copy or another index, so write paths (and callers already holding
+	 * the write lock) always see the current state.
+	 * 
+	 * @param location String of file name
+	 * @return true if the location is in this index, else false
+	 */
+	protected final boolean containsLocation(String location) {
+		return locations.getId(location) >= 0;
 	}
 
 	/**
@@ -166,7 +492,7 @@ public class InvertedIndex {
 	 * @return true if index contains the word stem, else false
 	 */
 	public boolean indexContains(String word) {
-		return index.containsKey(word);
+		return livePostings(getPostings(word)) != null;
 	}
 
 	/**
@@ -177,7 +503,7 @@ public class InvertedIndex {
 	 * @return true if file exists in map of word stem, else false
 	 */
 	public boolean indexContains(String word, String location) {
-		return indexContains(word) && index.get(word).containsKey(location);
+		return getPositionList(word, location) != null;
 	}
 
 	/**
@@ -189,7 +515,8 @@ public class InvertedIndex {
 	 * @return true if position in set for file, else false
 	 */
 	public boolean indexContains(String word, String location, int position) {
-		return indexContains(word, location) && index.get(word).get(location).contains(position);
+		PositionList positions = getPositionList(word, location);
+		return positions != null && positions.contains(position);
 	}
 
 	/**
@@ -199,7 +526,7 @@ public class InvertedIndex {
 	 * @throws IOException error in JsonWriter.writeObject
 	 */
 	public void outputCounts(Path location) throws IOException {
-		JsonWriter.writeObject(counts, location);
+		JsonWriter.writeObject(getCounts(), location);
 	}
 
 	/**
@@ -209,7 +536,7 @@ public class InvertedIndex {
 	 * @throws IOException IOException error in JsonWriter.writeInvertedIndex
 	 */
 	public void outputIndex(Path location) throws IOException {
-		JsonWriter.writeInvertedIndex(index, location);
+		JsonWriter.writeInvertedIndex(resolveIndex(), location);
 	}
 
 	/**
@@ -219,7 +546,7 @@ public class InvertedIndex {
 	 * @throws IOException IOException error in JsonWriter.writeInvertedIndex
 	 */
 	public void outputIndex(Writer writer) throws IOException {
-		JsonWriter.writeInvertedIndex(index, writer, 0);
+		JsonWriter.writeInvertedIndex(resolveIndex(), writer, 0);
 	}
 
 	/**
@@ -228,7 +555,15 @@ public class InvertedIndex {
 	 * @return size of index map
 	 */
 	public Integer size() {
-		return index.size();
+		if (tombstones > 0) {
+			return getWords().size();
+		}
+
+		int size = 0;
+		for (PostingIndex stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
 	}
 
 	/**
@@ -238,11 +573,11 @@ public class InvertedIndex {
 	 * @return size of the word's map, null if DNE
 	 */
 	public int size(String word) {
-		TreeMap<String, TreeSet<Integer>> map = index.get(word);
-		if (map == null) {
+		PostingList postings = livePostings(getPostings(word));
+		if (postings == null) {
 			return 0;
 		} else
-			return map.size();
+			return postings.size();
 	}
 
 	/**
@@ -253,17 +588,12 @@ public class InvertedIndex {
 	 * @return number of occurrences of word in file
 	 */
 	public int size(String word, String location) {
-		TreeMap<String, TreeSet<Integer>> map = index.get(word);
-		if (map == null) {
+		PositionList positions = getPositionList(word, location);
+		if (positions == null) {
 			return 0;
 		}
 
-		TreeSet<Integer> set = map.get(location);
-		if (set == null) {
-			return 0;
-		}
-
-		return set.size();
+		return positions.size();
 	}
 
 	/**
@@ -272,7 +602,7 @@ public class InvertedIndex {
 	 * @return size of counts map
 	 */
 	public int countsSize() {
-		return counts.size();
+		return locations.count();
 	}
 
 	/**
@@ -282,47 +612,73 @@ public class InvertedIndex {
 	 * @return number of word stems in file, null if file DNE
 	 */
 	public int getWordCount(String location) {
-		return counts.getOrDefault(location, 0);
+		int doc = locations.getId(location);
+		return doc < 0 ? 0 : counts[doc];
 	}
 
 	/**
-	 * Returns an unmodifiable view of word stems in index
+	 * Returns an unmodifiable sorted collection of word stems in index
 	 * 
-	 * @return unmodifiable view of the words in inverted index
+	 * @return unmodifiable sorted collection of the words in inverted index
 	 */
 	public Collection<String> getWords() {
-		return Collections.unmodifiableCollection(index.keySet());
+		if (stripes.length == 1 && tombstones == 0) {
+			return stripes[0].terms();
+		}
+
+		ArrayList<String> words = new ArrayList<>();
+		for (PostingIndex stripe : stripes) {
+			if (tombstones == 0) {
+				words.addAll(stripe.terms());
+			} else {
+				for (Entry<String, PostingList> entry : stripe) { // skip stems only left in removed documents
+					if (livePostings(entry.getValue()) != null) {
+						words.add(entry.getKey());
+					}
+				}
+			}
+		}
+		Collections.sort(words);
+		return Collections.unmodifiableList(words);
 	}
 
 	/**
-	 * Returns an unmodifiable view of counts key set
+	 * Returns an unmodifiable sorted collection of the locations in counts
 	 * 
-	 * @return unmodifiable view of the counts map
+	 * @return unmodifiable sorted collection of the locations
 	 */
 	public Collection<String> getLocations() {
-		return Collections.unmodifiableCollection(counts.keySet());
+		return locations.sorted();
 	}
 
 	/**
-	 * Returns an unmodifiable view of counts map
+	 * Returns an unmodifiable map of locations to word counts
 	 * 
-	 * @return unmodifiable view of the counts map
+	 * @return unmodifiable sorted map of the counts
 	 */
 	public Map<String, Integer> getCounts() {
-		return Collections.unmodifiableMap(counts);
+		TreeMap<String, Integer> resolved = new TreeMap<>();
+		for (int doc = 0; doc < locations.size(); doc++) {
+			if (!locations.isRemoved(doc)) {
+				resolved.put(locations.getLocation(doc), counts[doc]);
+			}
+		}
+		return Collections.unmodifiableMap(resolved);
 	}
 
 	/**
-	 * Returns unmodifiable view of stem's key set (emptySet if stem not in map)
+	 * Returns unmodifiable sorted collection of stem's locations (emptySet if stem
+	 * not in map)
 	 * 
 	 * @param word word stem
-	 * @return unmodifiable view of stem's map, emptySet if DNE
+	 * @return unmodifiable collection of stem's locations, emptySet if DNE
 	 */
 	public Collection<String> getLocations(String word) {
-		if (index.get(word) == null) { // if stem not in map, return emptyList
+		PostingList postings = livePostings(getPostings(word));
+		if (postings == null) { // if stem not in map, return emptyList
 			return Collections.emptySet();
 		}
-		return Collections.unmodifiableCollection(index.get(word).keySet());
+		return Collections.unmodifiableCollection(resolve(postings).keySet());
 	}
 
 	/**
@@ -335,23 +691,129 @@ public class InvertedIndex {
 	 *         or file DNE
 	 */
 	public Collection<Integer> getPositions(String word, String location) {
-		TreeMap<String, TreeSet<Integer>> getWord = index.get(word);
+		PositionList positions = getPositionList(word, location);
 
-		if (getWord != null) { // if word in map
-			TreeSet<Integer> getLocation = getWord.get(location);
-
-			if (getLocation != null) { // if location in word map
-				return Collections.unmodifiableCollection(getLocation);
-			}
+		if (positions != null) { // if word and location in index
+			return Collections.unmodifiableCollection(positions);
 		}
 
 		return Collections.emptySet(); // else return empty set
 
 	}
 
+	/**
+	 * Returns the posting list of a stem
+	 * 
+	 * @param word word stem
+	 * @return posting list of stem, null if stem DNE
+	 */
+	private PostingList getPostings(String word) {
+		return stripes[stripeOf(word)].get(word);
+	}
+
+	/**
+	 * Returns a posting list without the removed documents
+	 * 
+	 * @param postings posting list to filter, may be null
+	 * @return the list itself if nothing was removed, a filtered copy sharing its
+	 *         positions if something was, or null if no documents are left
+	 */
+	private PostingList livePostings(PostingList postings) {
+		if (postings == null) {
+			return null;
+		}
+
+		if (tombstones > 0) {
+			postings = postings.without(locations::isRemoved);
+		}
+		return postings.size() == 0 ? null : postings;
+	}
+
+	/**
+	 * Returns the posting list of a stem, adding an empty list if the stem is not
+	 * in the index yet
+	 * 
+	 * @param word word stem
+	 * @return posting list of stem
+	 */
+	private PostingList getOrCreatePostings(String word) {
+		return stripes[stripeOf(word)].getOrCreate(word);
+	}
+
+	/**
+	 * Returns the positions of a stem in a given file
+	 * 
+	 * @param word     word stem
+	 * @param location string of file name
+	 * @return positions of stem in file, null if stem or file DNE
+	 */
+	private PositionList getPositionList(String word, String location) {
+		PostingList postings = getPostings(word);
+		int doc = locations.getId(location);
+
+		if (postings == null || doc < 0) {
+			return null;
+		}
+		return postings.get(doc);
+	}
+
+	/**
+	 * Returns a map of location to positions for a posting list, sorted by
+	 * location
+	 * 
+	 * @param postings posting list to resolve
+	 * @return sorted map from location to positions
+	 */
+	private TreeMap<String, PositionList> resolve(PostingList postings) {
+		TreeMap<String, PositionList> resolved = new TreeMap<>();
+		for (int i = 0; i < postings.size(); i++) {
+			resolved.put(locations.getLocation(postings.doc(i)), postings.positions(i));
+		}
+		return resolved;
+	}
+
+	/**
+	 * Returns a read-only view of the index with document ids resolved to their
+	 * locations. Each word's map of locations is only built while it is iterated,
+	 * so the index can be written out without copying all of it.
+	 * 
+	 * @return view of word stems to sorted maps of locations to positions
+	 */
+	private Map<String, Map<String, PositionList>> resolveIndex() {
+		return new AbstractMap<>() {
+			@Override
+			public Set<Entry<String, Map<String, PositionList>>> entrySet() {
+				return new AbstractSet<>() {
+					@Override
+					public Iterator<Entry<String, Map<String, PositionList>>> iterator() {
+						Iterator<Entry<String, PostingList>> iter = postings();
+
+						return new Iterator<>() {
+							@Override
+							public boolean hasNext() {
+								return iter.hasNext();
+							}
+
+							@Override
+							public Entry<String, Map<String, PositionList>> next() {
+								Entry<String, PostingList> entry = iter.next();
+								return Map.entry(entry.getKey(), resolve(entry.getValue()));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return InvertedIndex.this.size();
+					}
+				};
+			}
+		};
+	}
+
 	@Override
 	public String toString() {
-		return "Inverted Index:\n" + index.toString() + "\n\nWord Counts:\n" + counts.toString();
+		return "Inverted Index:\n" + resolveIndex().toString() + "\n\nWord Counts:\n" + getCounts().toString();
 	}
 
 	/**
@@ -363,29 +825,84 @@ public class InvertedIndex {
 	 * @return a list of FoundFiles associated with given query
 	 */
 	public ArrayList<FoundFile> search(Set<String> queries, boolean isPartial) {
-		return isPartial ? partialSearch(queries) : exactSearch(queries);
+		return search(queries, isPartial, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Calls the correct search method and returns a list of only the best
+	 * FoundFiles for given query line
+	 * 
+	 * @param queries   set of query words to find search results for
+	 * @param isPartial true if partial search, false if exact
+	 * @param limit     maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles associated with given query
+	 */
+	public ArrayList<FoundFile> search(Set<String> queries, boolean isPartial, int limit) {
+		long start = System.nanoTime();
+		QueryTrace.phase(QueryTrace.LOOKUP); // includes waiting for any lock
+		try {
+			return isPartial ? partialSearch(queries, limit) : exactSearch(queries, limit);
+		} finally {
+			SEARCH_TIME.recordSince(start);
+		}
 	}
 
 	/**
-	 * Helper function for search that finds results for each corresponding file to
-	 * query word
+	 * Turns the matches in the accumulator into a sorted list of the top
+	 * FoundFiles and clears the accumulator for the next search. If there are more
+	 * matches than the limit, only the best are kept in a bounded heap whose head
+	 * is the worst result kept so far, so a FoundFile is only created for matches
+	 * that beat it. Removed documents are skipped.
 	 * 
-	 * @param matches  map from file name to FoundFile object
-	 * @param toReturn list of FoundFiles associated with given query
-	 * @param word     the word key to map to given result
-	 * @param loop     set of files to loop through
+	 * @param accumulator matches of the current search
+	 * @param limit       maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles associated with the query
 	 */
-	private void searchHelper(Map<String, FoundFile> matches, ArrayList<FoundFile> toReturn, String word,
-			Set<String> loop) {
-		for (String file : loop) { // for every file
-			FoundFile found = matches.get(file);
-			if (found == null) {
-				found = new FoundFile(file);
-				toReturn.add(found);
-				matches.put(file, found);
+	private ArrayList<FoundFile> rank(ScoreAccumulator accumulator, int limit) {
+		if (limit <= 0) {
+			accumulator.clear();
+			return new ArrayList<>();
+		}
+
+		if (accumulator.size() <= limit) { // everything is returned, just sort it all
+			ArrayList<FoundFile> toReturn = new ArrayList<>(accumulator.size());
+
+			for (int i = 0; i < accumulator.size(); i++) { // only now create a FoundFile per matched file
+				int doc = accumulator.doc(i);
+				if (tombstones == 0 || !locations.isRemoved(doc)) {
+					toReturn.add(new FoundFile(doc, accumulator.matches(doc)));
+				}
+			}
+			accumulator.clear();
+
+			QueryTrace.phase(QueryTrace.SORT);
+			Collections.sort(toReturn);
+			return toReturn;
+		}
+
+		PriorityQueue<FoundFile> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+
+		for (int i = 0; i < accumulator.size(); i++) {
+			int doc = accumulator.doc(i);
+			int matches = accumulator.matches(doc);
+
+			if (tombstones > 0 && locations.isRemoved(doc)) {
+				continue;
+			}
+
+			if (heap.size() < limit) {
+				heap.add(new FoundFile(doc, matches));
+			} else if (heap.peek().compareTo(doc, matches) > 0) { // beats the worst kept result
+				heap.poll();
+				heap.add(new FoundFile(doc, matches));
 			}
-			found.update(word); // add/update counts
 		}
+		accumulator.clear();
+
+		QueryTrace.phase(QueryTrace.SORT);
+		ArrayList<FoundFile> toReturn = new ArrayList<>(heap);
+		Collections.sort(toReturn);
+		return toReturn;
 	}
 
 	/**
@@ -394,20 +911,30 @@ public class InvertedIndex {
 	 * @param queries set of query words to find exact search results for
 	 * @return a list of FoundFiles associated with given query
 	 */
-	public ArrayList<FoundFile> exactSearch(Set<String> queries) { // just one line
+	public ArrayList<FoundFile> exactSearch(Set<String> queries) {
+		return exactSearch(queries, Integer.MAX_VALUE);
+	}
 
-		Map<String, FoundFile> matches = new HashMap<>();
-		ArrayList<FoundFile> toReturn = new ArrayList<>();
+	/**
+	 * Returns a list of the top FoundFiles for given query line
+	 * 
+	 * @param queries set of query words to find exact search results for
+	 * @param limit   maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles associated with given query
+	 */
+	public ArrayList<FoundFile> exactSearch(Set<String> queries, int limit) { // just one line
+		QueryTrace.phase(QueryTrace.LOOKUP);
+		ArrayList<PostingList> matched = new ArrayList<>(queries.size());
 
 		for (String word : queries) { // for every query word
-			var locations = index.get(word);
-			if (locations != null) { // if word in index
-				searchHelper(matches, toReturn, word, locations.keySet());
+			var postings = getPostings(word);
+			if (postings != null) { // if word in index
+				matched.add(postings);
 			}
 		}
 
-		Collections.sort(toReturn);
-		return toReturn;
+		QueryTrace.phase(QueryTrace.SCORE);
+		return evaluate(matched, limit);
 	}
 
 	/**
@@ -417,29 +944,149 @@ public class InvertedIndex {
 	 * @return a list of FoundFiles associated with given query
 	 */
 	public ArrayList<FoundFile> partialSearch(Set<String> queries) {
+		return partialSearch(queries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a list of the top FoundFiles for given query line
+	 * 
+	 * @param queries set of query words to find partial search results for
+	 * @param limit   maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles associated with given query
+	 */
+	public ArrayList<FoundFile> partialSearch(Set<String> queries, int limit) {
+		QueryTrace.phase(QueryTrace.LOOKUP);
+		ArrayList<PostingList> matched = new ArrayList<>();
+
+		for (String word : queries) { // for every query word, add files of every stem starting with it
+			for (PostingIndex stripe : stripes) {
+				stripe.forEachPrefix(word, matched::add);
+			}
+		}
 
-		Map<String, FoundFile> matches = new HashMap<>();
-		ArrayList<FoundFile> toReturn = new ArrayList<>();
+		QueryTrace.phase(QueryTrace.SCORE);
+		return evaluate(matched, limit);
+	}
 
-		for (String word : queries) { // for every query word
-			for (var indexStem : index.tailMap(word).entrySet()) { // for words in index, add files if stem contains
-																	// query
-				String stem = indexStem.getKey();
-				if (stem.startsWith(word)) {
-					searchHelper(matches, toReturn, stem, indexStem.getValue().keySet());
+	/**
+	 * Scores the documents in the posting lists of the matched word stems and
+	 * returns the top FoundFiles. Only a limited search over a few posting lists
+	 * is pruned, otherwise every posting is added to the accumulator.
+	 * 
+	 * @param matched posting lists of the matched word stems
+	 * @param limit   maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles
+	 */
+	private ArrayList<FoundFile> evaluate(List<PostingList> matched, int limit) {
+		if (limit > 0 && limit < locations.size() && matched.size() <= MAX_PRUNED_LISTS) {
+			return maxScore(matched, limit);
+		}
+
+		ScoreAccumulator accumulator = accumulators.get();
+		accumulator.reset(locations.size());
+
+		for (PostingList postings : matched) {
+			accumulator.addAll(postings);
+		}
+
+		return rank(accumulator, limit);
+	}
+
+	/**
+	 * Returns the top FoundFiles using MaxScore pruning. Posting lists are walked
+	 * a document at a time in order of document id. Once the heap of top results
+	 * is full, the lists whose combined score bounds cannot reach the worst kept
+	 * score are no longer used to find candidates, only to finish scoring
+	 * candidates found in the other lists, and are skipped ahead with
+	 * {@link PostingList#seek(int, int)}. A candidate is dropped as soon as its
+	 * score bound falls below the worst kept score. Documents that could tie that
+	 * score are always scored, so the results are the same as ranking every match.
+	 * Removed documents are skipped once the essential lists move past them.
+	 * 
+	 * @param matched posting lists of the matched word stems (limit must be
+	 *                positive)
+	 * @param limit   maximum number of FoundFiles to return
+	 * @return a sorted list of the top FoundFiles
+	 */
+	private ArrayList<FoundFile> maxScore(List<PostingList> matched, int limit) {
+		int n = matched.size();
+		PostingList[] lists = matched.toArray(new PostingList[n]);
+		Arrays.sort(lists, Comparator.comparingDouble(list -> list.bound(counts))); // smallest bound first
+
+		double[] below = new double[n + 1]; // sum of the bounds of the lists before each index
+		for (int i = 0; i < n; i++) {
+			below[i + 1] = below[i] + lists[i].bound(counts);
+		}
+
+		int[] cursors = new int[n];
+		int essential = 0; // lists before this index cannot reach the threshold on their own
+		double threshold = Double.NEGATIVE_INFINITY;
+		PriorityQueue<FoundFile> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+
+		while (true) {
+			int doc = Integer.MAX_VALUE;
+			for (int i = essential; i < n; i++) { // next candidate is the smallest document in an essential list
+				if (cursors[i] < lists[i].size()) {
+					doc = Math.min(doc, lists[i].doc(cursors[i]));
+				}
+			}
+			if (doc == Integer.MAX_VALUE) {
+				break;
+			}
+
+			int count = 0;
+			for (int i = essential; i < n; i++) {
+				if (cursors[i] < lists[i].size() && lists[i].doc(cursors[i]) == doc) {
+					count += lists[i].frequency(cursors[i]++);
+				}
+			}
+
+			if (tombstones > 0 && locations.isRemoved(doc)) {
+				continue;
+			}
 
-				} else { // out of range of associated stems
+			boolean pruned = false;
+			for (int i = essential - 1; i >= 0; i--) { // finish scoring with the non-essential lists, largest bound first
+				if ((double) count / counts[doc] + below[i + 1] < threshold - BOUND_EPSILON) {
+					pruned = true;
 					break;
 				}
+
+				cursors[i] = lists[i].seek(cursors[i], doc);
+				if (cursors[i] < lists[i].size() && lists[i].doc(cursors[i]) == doc) {
+					count += lists[i].frequency(cursors[i]);
+				}
+			}
+
+			if (pruned) {
+				continue;
+			}
+
+			if (heap.size() < limit) {
+				heap.add(new FoundFile(doc, count));
+			} else if (heap.peek().compareTo(doc, count) > 0) { // beats the worst kept result
+				heap.poll();
+				heap.add(new FoundFile(doc, count));
+			} else {
+				continue;
+			}
+
+			if (heap.size() == limit) { // raise the threshold and move lists out of the essential set
+				threshold = heap.peek().score;
+				while (essential < n && below[essential + 1] < threshold - BOUND_EPSILON) {
+					essential++;
+				}
 			}
 		}
 
+		QueryTrace.phase(QueryTrace.SORT);
+		ArrayList<FoundFile> toReturn = new ArrayList<>(heap);
 		Collections.sort(toReturn);
 		return toReturn;
 	}
 
 	/**
-	 * Class for FoundFile objects (stores its word count, score, and path)
+	 * Class for FoundFile objects (stores its word count, score, and document id)
 	 * 
 	 * @author Athene Marston
 	 *
@@ -448,35 +1095,26 @@ public class InvertedIndex {
 		/**
 		 * File word count
 		 */
-		private int count;
+		private final int count;
 		/**
 		 * Score associated with query (total matches / total words)
 		 */
-		private double score;
+		private final double score;
 		/**
-		 * String representation of file path
+		 * Document id of the file, only resolved to a path for output
 		 */
-		private final String path;
+		private final int doc;
 
 		/**
 		 * FoundFile constructor
 		 * 
-		 * @param path string of file path
-		 */
-		public FoundFile(String path) {
-			this.count = 0;
-			this.score = 0.0;
-			this.path = path;
-		}
-
-		/**
-		 * Updates the count and score of given FoundFile object
-		 * 
-		 * @param word query word
+		 * @param doc   document id of the file
+		 * @param count number of times the query words occur in the file
 		 */
-		private void update(String word) {
-			this.count += index.get(word).get(path).size();
-			this.score = (double) count / counts.get(path);
+		public FoundFile(int doc, int count) {
+			this.count = count;
+			this.score = (double) count / counts[doc];
+			this.doc = doc;
 		}
 
 		/**
@@ -503,23 +1141,55 @@ public class InvertedIndex {
 		 * @return FoundFile's path
 		 */
 		public String getPath() {
-			return this.path;
+			return locations.getLocation(doc);
+		}
+
+		/**
+		 * Compares paths ignoring case, falling back to case so paths that only
+		 * differ by case always have the same order
+		 * 
+		 * @param path  first path
+		 * @param other second path
+		 * @return negative if path comes first, positive if other does
+		 */
+		private static int comparePaths(String path, String other) {
+			int compared = String.CASE_INSENSITIVE_ORDER.compare(path, other);
+			return compared == 0 ? path.compareTo(other) : compared;
 		}
 
 		@Override
 		public int compareTo(FoundFile o) {
 			if (this.score == o.score) {
 				if (this.count == o.count) { // if same score and count
-					return String.CASE_INSENSITIVE_ORDER.compare(this.path, o.path);
+					return comparePaths(this.getPath(), o.getPath());
 				}
 				return Integer.compare(o.count, this.count); // if same score (from biggest to smallest)
 			}
 			return Double.compare(o.score, this.score); // sort from biggest to smallest score
 		}
 
+		/**
+		 * Compares this FoundFile to a match that has not been made into a FoundFile
+		 * yet, using the same order as {@link #compareTo(FoundFile)}
+		 * 
+		 * @param doc   document id of the match
+		 * @param count number of times the query words occur in the match
+		 * @return negative if this FoundFile comes first, positive if the match does
+		 */
+		private int compareTo(int doc, int count) {
+			double score = (double) count / counts[doc];
+			if (this.score == score) {
+				if (this.count == count) { // if same score and count
+					return comparePaths(this.getPath(), locations.getLocation(doc));
+				}
+				return Integer.compare(count, this.count);
+			}
+			return Double.compare(score, this.score);
+		}
+
 		@Override
 		public String toString() {
-			return "\nCount: " + count + ", Score: " + score + ", Path: " + this.path;
+			return "\nCount: " + count + ", Score: " + score + ", Path: " + getPath();
 		}
 	}
 
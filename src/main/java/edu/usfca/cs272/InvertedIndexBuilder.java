@@ -1,17 +1,18 @@
 package edu.usfca.cs272;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class responsible for accessing readable text files opens files, stems, and
@@ -21,6 +22,33 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
  */
 public class InvertedIndexBuilder {
 
+	/**
+	 * Per-thread tokenizer for reading text files, so its buffers are reused
+	 * across files
+	 */
+	private static final ThreadLocal<TextTokenizer> TOKENIZERS = ThreadLocal.withInitial(TextTokenizer::new);
+
+	/**
+	 * Number of text files parsed
+	 */
+	private static final Metrics.Counter FILES = Metrics.counter("build.files");
+
+	/**
+	 * Number of words parsed from text files
+	 */
+	private static final Metrics.Counter TOKENS = Metrics.counter("build.tokens");
+
+	/**
+	 * Time to parse each text file
+	 */
+	private static final Metrics.Histogram PARSE_TIME = Metrics.histogram("build.parse");
+
+	static { // words parsed per second of parsing, by one thread
+		Metrics.Histogram chunks = Metrics.histogram("build.chunk");
+		Metrics.gauge("build.tokensPerSecond",
+				() -> Math.round(Metrics.ratio(TOKENS.get() * 1e9, PARSE_TIME.sum() + chunks.sum())));
+	}
+
 	/**
 	 * Builds counts map and InvertedIndex
 	 * 
@@ -30,57 +58,226 @@ public class InvertedIndexBuilder {
 	 * @throws NullPointerException null path provided
 	 */
 	public static void build(Path location, InvertedIndex index) throws IOException, NullPointerException {
-		List<Path> list = FileFinder.listText(location); // text files in path
+		build(FileFinder.listText(location), index); // text files in path
+	}
 
+	/**
+	 * Builds counts map and InvertedIndex from a list of text files
+	 * 
+	 * @param list  text files to parse
+	 * @param index InvertedIndex for inverted index of word stems and counts map
+	 * @throws IOException error in FileStemmer
+	 */
+	public static void build(List<Path> list, InvertedIndex index) throws IOException {
 		for (Path p : list) { // for every text file, stem and addAll to index
 			parseFile(p, index);
 		}
 	}
 
 	/**
-	 * Parses stems and adds the file and words to InvertedIndex
+	 * Builds counts map and InvertedIndex, only parsing the text files that are
+	 * new or changed since the last incremental build. The rest are loaded from
+	 * the index saved by that build, and the index and manifest are saved again
+	 * afterwards.
 	 * 
-	 * @param location a file in path
-	 * @param index    InvertedIndex
-	 * @throws IOException error in FileStemmer
+	 * @param location path path to input text/s
+	 * @param manifest path of the manifest file, the index is saved next to it
+	 * @param index    InvertedIndex for inverted index of word stems and counts map
+	 * @throws IOException          error in FileFinder, FileStemmer, or saving
+	 * @throws NullPointerException null path provided
 	 */
-	public static void parseFile(Path location, InvertedIndex index) throws IOException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
-		Integer i = 1;
-		String path = location.toString();
-
-		try (BufferedReader in = Files.newBufferedReader(location, UTF_8)) {
-			String line = null;
-			while ((line = in.readLine()) != null) { // add to list line by line
-				String[] words = FileStemmer.parse(line);
-
-				for (String word : words) {
-					String stem = stemmer.stem(word).toString();
-					index.addInvertedIndex(stem, path, i);
-					i++;
+	public static void incrementalBuild(Path location, Path manifest, InvertedIndex index)
+			throws IOException, NullPointerException {
+		IndexManifest updated = new IndexManifest();
+		build(loadUnchanged(location, manifest, index, updated), index);
+		save(manifest, index, updated);
+	}
+
+	/**
+	 * A multithreaded version of {@link #incrementalBuild(Path, Path, InvertedIndex)}
+	 * 
+	 * @param queue    WorkQueue to use
+	 * @param location path path to input text/s
+	 * @param manifest path of the manifest file, the index is saved next to it
+	 * @param index    InvertedIndex for inverted index of word stems and counts map
+	 * @throws IOException          error in FileFinder or saving
+	 * @throws NullPointerException null path provided
+	 */
+	public static void threadedIncrementalBuild(WorkQueue queue, Path location, Path manifest,
+			ThreadSafeInvertedIndex index) throws IOException, NullPointerException {
+		IndexManifest updated = new IndexManifest();
+		threadedBuild(queue, loadUnchanged(location, manifest, index, updated), index);
+		save(manifest, index, updated);
+	}
+
+	/**
+	 * Returns the path of the index file saved with a manifest
+	 * 
+	 * @param manifest path of the manifest file
+	 * @return path of the index file
+	 */
+	public static Path indexPath(Path manifest) {
+		return manifest.resolveSibling(manifest.getFileName() + ".index");
+	}
+
+	/**
+	 * Compares the text files in a path to the last manifest, loads the files
+	 * that have not changed from the saved index, and records the current state
+	 * of every file. A file is unchanged if its size and modification time match
+	 * or, failing that, its size and content hash match.
+	 * 
+	 * @param location path path to input text/s
+	 * @param manifest path of the manifest file
+	 * @param index    InvertedIndex to load unchanged files into
+	 * @param updated  manifest to record the current state of every file in
+	 * @return the new or changed text files that still need to be parsed
+	 * @throws IOException error in FileFinder or reading a file
+	 */
+	private static List<Path> loadUnchanged(Path location, Path manifest, InvertedIndex index, IndexManifest updated)
+			throws IOException {
+		List<Path> list = FileFinder.listText(location); // text files in path
+
+		IndexManifest previous;
+		try {
+			previous = Files.exists(manifest) ? IndexManifest.read(manifest) : new IndexManifest();
+		} catch (IOException e) { // unreadable, so rebuild everything
+			previous = new IndexManifest();
+		}
+
+		ArrayList<Path> changed = new ArrayList<>();
+		HashSet<String> unchanged = new HashSet<>();
+
+		for (Path path : list) {
+			String key = path.toString();
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			IndexManifest.FileState state = previous.get(key);
+
+			if (state == null || !state.matches(attributes)) { // touched, so compare contents
+				IndexManifest.FileState current = IndexManifest.FileState.of(path, attributes);
+				if (state == null || !state.sameContents(current)) {
+					state = null;
 				}
+				updated.put(key, current);
+			} else {
+				updated.put(key, state);
+			}
+
+			if (state == null) {
+				changed.add(path);
+			} else {
+				unchanged.add(key);
+			}
+		}
+
+		if (!unchanged.isEmpty()) {
+			try { // deleted and changed files are left out, so their old postings are never loaded
+				IndexFile.read(indexPath(manifest), index, unchanged::contains);
+			} catch (IOException e) { // missing or unreadable, so rebuild everything
+				return list;
 			}
 		}
+		return changed;
+	}
+
+	/**
+	 * Saves the index and then its manifest, so a manifest never describes files
+	 * that are missing from the saved index
+	 * 
+	 * @param manifest path of the manifest file
+	 * @param index    InvertedIndex to save
+	 * @param updated  manifest of the files in the index
+	 * @throws IOException error writing either file
+	 */
+	private static void save(Path manifest, InvertedIndex index, IndexManifest updated) throws IOException {
+		Path path = indexPath(manifest);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		IndexFile.write(index, temp);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		updated.write(manifest);
+	}
+
+	/**
+	 * Parses stems and adds the file and words to InvertedIndex. The file is read
+	 * through a memory mapping by this thread's {@link TextTokenizer}, so words are
+	 * stemmed straight from its reused buffers, and repeated words are stemmed by
+	 * this thread's {@link StemCache}. The positions of each stem are collected
+	 * first and added to the index all at once.
+	 * 
+	 * @param location a file in path
+	 * @param index    InvertedIndex
+	 * @throws IOException error reading or decoding the file
+	 */
+	public static void parseFile(Path location, InvertedIndex index) throws IOException {
+		long start = System.nanoTime();
+		Stemmer stemmer = StemCache.english();
+		HashMap<String, PositionList> positions = new HashMap<>();
+		int[] position = { 1 };
+
+		TOKENIZERS.get().tokenize(location, word -> {
+			String stem = stemmer.stem(word).toString();
+			positions.computeIfAbsent(stem, s -> new PositionList()).add(position[0]++);
+		});
+		index.addPositions(location.toString(), positions);
+
+		FILES.increment();
+		TOKENS.add(position[0] - 1);
+		PARSE_TIME.recordSince(start);
 	}
 
 	/**
-	 * A multithreaded builder method for counts map and inverted index
+	 * A multithreaded builder method for counts map and inverted index. The
+	 * directories are walked on the queue too, and each text file is parsed as
+	 * soon as it is found.
 	 * 
 	 * @param location path path to input text/s
 	 * @param index    InvertedIndex for inverted index of word stems and counts map
 	 * @param queue    WorkQueue to use
 	 * @throws IOException          error in FileFinder
 	 * @throws NullPointerException null path provided
+	 *
+	 * @see FileFinder#walkText(WorkQueue, Path, java.util.function.Consumer)
 	 */
 	public static void threadedBuild(WorkQueue queue, Path location, ThreadSafeInvertedIndex index)
 			throws IOException, NullPointerException {
-		List<Path> list = FileFinder.listText(location); // text files in path
+		FileFinder.walkText(queue, location, path -> queue.execute(new BuildTask(path, index)));
+		queue.finish();
+		index.publish();
+	}
+
+	/**
+	 * A multithreaded builder method for counts map and inverted index that reads,
+	 * stems, and merges the text files in separate stages. The queue walks the
+	 * directories, a quarter as many threads read files, and as many threads as
+	 * the queue has stem them.
+	 * 
+	 * @param queue    WorkQueue to use
+	 * @param location path path to input text/s
+	 * @param index    InvertedIndex for inverted index of word stems and counts map
+	 * @throws IOException          error in FileFinder
+	 * @throws NullPointerException null path provided
+	 *
+	 * @see BuildPipeline
+	 */
+	public static void pipelinedBuild(WorkQueue queue, Path location, ThreadSafeInvertedIndex index)
+			throws IOException, NullPointerException {
+		new BuildPipeline(index, Math.max(1, queue.size() / 4), queue.size()).build(queue, location);
+	}
 
+	/**
+	 * A multithreaded builder method for counts map and inverted index from a
+	 * list of text files
+	 * 
+	 * @param queue WorkQueue to use
+	 * @param list  text files to parse
+	 * @param index InvertedIndex for inverted index of word stems and counts map
+	 */
+	public static void threadedBuild(WorkQueue queue, List<Path> list, ThreadSafeInvertedIndex index) {
 		for (Path path : list) {
 			BuildTask task = new BuildTask(path, index);
 			queue.execute(task);
 		}
 		queue.finish();
+		index.publish();
 	}
 
 	/**
@@ -144,8 +341,9 @@ public class InvertedIndexBuilder {
 	 * @throws MalformedURLException error normalizing url
 	 */
 	public static void buildHtml(String seed, InvertedIndex index) throws MalformedURLException, URISyntaxException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
-		int i = 1;
+		Stemmer stemmer = StemCache.english();
+		HashMap<String, PositionList> positions = new HashMap<>();
+		int[] position = { 1 };
 
 		URL url = LinkFinder.normalize(new URL(seed)); // location
 
@@ -154,13 +352,11 @@ public class InvertedIndexBuilder {
 		if (html != null) { // if valid html
 			html = HtmlCleaner.stripHtml(html);
 
-			String[] htmlLines = FileStemmer.parse(html);
-
-			for (String line : htmlLines) { // for every word, stem + add to index
-				String stem = stemmer.stem(line).toString();
-				index.addInvertedIndex(stem, url.toString(), i);
-				i++;
-			}
+			FileStemmer.parse(html, word -> { // for every word, stem + collect its position
+				String stem = stemmer.stem(word).toString();
+				positions.computeIfAbsent(stem, s -> new PositionList()).add(position[0]++);
+			});
+			index.addPositions(url.toString(), positions);
 		}
 	}
 
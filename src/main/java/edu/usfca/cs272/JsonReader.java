@@ -0,0 +1,615 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads an inverted index back from the "pretty" JSON format written by
+ * {@link JsonWriter#writeInvertedIndex(Map, Path)}, so a previous run's output
+ * can be loaded without stemming the original text again.
+ *
+ * The file is streamed rather than parsed into a document tree. The reading
+ * thread only finds where each word stem's entry starts and ends and collects
+ * the raw entries into chunks, and the chunks are parsed into local indexes by
+ * a work queue (or one after the other without one). Word counts are not part
+ * of the index output, so the count of each location is taken as its largest
+ * position, which matches how positions are assigned when building.
+ *
+ * @author Athene Marston
+ */
+public class JsonReader {
+
+	/**
+	 * Number of characters collected into a chunk before it is parsed
+	 */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Reads an inverted index from a JSON file and adds it to an index
+	 *
+	 * @param path  the file path to read
+	 * @param index the index to add to
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 */
+	public static void readInvertedIndex(Path path, InvertedIndex index) throws IOException {
+		readInvertedIndex(path, index, null);
+	}
+
+	/**
+	 * Reads an inverted index from a JSON file and adds it to an index, parsing
+	 * chunks of the file in parallel. Everything is parsed into local indexes
+	 * first and added with {@link InvertedIndex#addAll(InvertedIndex)}, so a
+	 * thread-safe index is only locked for the merge, and is published
+	 * afterwards.
+	 *
+	 * @param path  the file path to read
+	 * @param index the index to add to
+	 * @param queue WorkQueue to parse chunks on, null to parse them on this thread
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 */
+	public static void readInvertedIndex(Path path, InvertedIndex index, WorkQueue queue) throws IOException {
+		ArrayList<ChunkTask> tasks = new ArrayList<>();
+
+		try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+			JsonParser parser = new JsonParser(reader);
+			parser.expect('{');
+
+			StringBuilder chunk = new StringBuilder();
+			int line = parser.line();
+			int members = 0;
+
+			parser.skipWhitespace(chunk);
+			if (parser.peek() != '}') {
+				while (true) {
+					parser.capture(chunk);
+					members++;
+
+					parser.skipWhitespace(chunk);
+					if (parser.peek() != ',') {
+						break;
+					}
+					parser.next();
+
+					if (chunk.length() >= CHUNK_SIZE) { // hand off the chunk, the next one starts after the comma
+						tasks.add(submit(chunk, line, queue));
+						chunk = new StringBuilder();
+						line = parser.line();
+						members = 0;
+					} else {
+						chunk.append(',');
+					}
+					parser.skipWhitespace(chunk);
+				}
+			}
+
+			if (members > 0) {
+				tasks.add(submit(chunk, line, queue));
+			}
+
+			parser.expect('}');
+			parser.skipWhitespace(null);
+			if (parser.peek() >= 0) {
+				throw parser.error("unexpected text after index");
+			}
+		} finally {
+			if (queue != null) {
+				queue.finish();
+			}
+		}
+
+		index.addAll(merge(tasks));
+
+		if (index instanceof ThreadSafeInvertedIndex safe) {
+			safe.publish();
+		}
+	}
+
+	/**
+	 * Parses a chunk on the work queue, or right away without one
+	 *
+	 * @param chunk raw text of the chunk
+	 * @param line  line of the file the chunk starts on
+	 * @param queue WorkQueue to use, may be null
+	 * @return the task parsing the chunk
+	 */
+	private static ChunkTask submit(StringBuilder chunk, int line, WorkQueue queue) {
+		ChunkTask task = new ChunkTask(chunk.toString(), line);
+		if (queue != null) {
+			queue.execute(task);
+		} else {
+			task.run();
+		}
+		return task;
+	}
+
+	/**
+	 * Merges the local indexes of finished chunks into one index, with each
+	 * location's word count set to its largest position in any chunk
+	 *
+	 * @param tasks finished chunk tasks
+	 * @return the merged index
+	 * @throws IOException if any chunk could not be parsed
+	 */
+	private static InvertedIndex merge(List<ChunkTask> tasks) throws IOException {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (ChunkTask task : tasks) {
+			if (task.error != null) {
+				throw task.error;
+			}
+			for (int doc = 0; doc < task.local.countsSize(); doc++) {
+				counts.merge(task.local.getLocation(doc), task.maxima[doc], Math::max);
+			}
+		}
+
+		InvertedIndex merged = new InvertedIndex();
+		for (var entry : counts.entrySet()) { // sorted, so document ids follow location order
+			merged.addLocation(entry.getKey(), entry.getValue());
+		}
+		for (ChunkTask task : tasks) {
+			merged.addAll(task.local);
+		}
+		return merged;
+	}
+
+	/**
+	 * Class for Runnable 'parse chunk' task objects to execute
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class ChunkTask implements Runnable {
+
+		/**
+		 * Raw text of one or more word stem entries
+		 */
+		private final String chunk;
+
+		/**
+		 * Line of the file the chunk starts on
+		 */
+		private final int line;
+
+		/**
+		 * Stores the entries parsed from the chunk (word counts are left at 0)
+		 */
+		private final InvertedIndex local;
+
+		/**
+		 * Largest position of each location, indexed by local document id
+		 */
+		private int[] maxima;
+
+		/**
+		 * Error parsing the chunk, null if parsed successfully
+		 */
+		private IOException error;
+
+		/**
+		 * Constructor for tasks
+		 *
+		 * @param chunk raw text of the chunk
+		 * @param line  line of the file the chunk starts on
+		 */
+		public ChunkTask(String chunk, int line) {
+			this.chunk = chunk;
+			this.line = line;
+			this.local = new InvertedIndex();
+			this.maxima = new int[16];
+			this.error = null;
+		}
+
+		@Override
+		public void run() {
+			try {
+				parse();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		/**
+		 * Parses every entry of the chunk into the local index
+		 *
+		 * @throws IOException if the chunk is not valid
+		 */
+		private void parse() throws IOException {
+			JsonParser parser = new JsonParser(chunk.toCharArray(), line);
+			ArrayList<String> words = new ArrayList<>();
+			ArrayList<PostingList> postings = new ArrayList<>();
+
+			do {
+				words.add(parser.readString());
+				parser.expect(':');
+				parser.expect('{');
+				postings.add(parseLocations(parser));
+			} while (parser.consume(','));
+
+			parser.skipWhitespace(null);
+			if (parser.peek() >= 0) {
+				throw parser.error("expected ',' or '}'");
+			}
+
+			int[] identity = new int[local.countsSize()]; // postings already use local ids
+			Arrays.setAll(identity, doc -> doc);
+			for (int i = 0; i < words.size(); i++) {
+				local.addPostings(words.get(i), postings.get(i), identity);
+			}
+		}
+
+		/**
+		 * Parses the locations and positions of one word stem, after its opening
+		 * brace
+		 *
+		 * @param parser parser positioned after the opening brace
+		 * @return posting list of the word stem
+		 * @throws IOException if the entry is not valid
+		 */
+		private PostingList parseLocations(JsonParser parser) throws IOException {
+			PostingList postings = new PostingList();
+
+			if (parser.consume('}')) {
+				return postings;
+			}
+
+			do {
+				String location = parser.readString();
+				parser.expect(':');
+				parser.expect('[');
+
+				PositionList positions = new PositionList();
+				if (!parser.consume(']')) {
+					do {
+						int position = parser.readInt();
+						if (position < 1) {
+							throw parser.error("positions must be positive");
+						}
+						positions.add(position);
+					} while (parser.consume(','));
+					parser.expect(']');
+				}
+
+				if (!positions.isEmpty()) {
+					int doc = local.addLocation(location, 0);
+					if (doc >= maxima.length) {
+						maxima = Arrays.copyOf(maxima, maxima.length * 2);
+					}
+					maxima[doc] = Math.max(maxima[doc], positions.last());
+					postings.add(doc, positions);
+				}
+			} while (parser.consume(','));
+
+			parser.expect('}');
+			return postings;
+		}
+
+		@Override
+		public String toString() {
+			return "chunk at line " + line;
+		}
+	}
+
+	/**
+	 * Minimal streaming JSON tokenizer over either a reader or text already in
+	 * memory, covering only what the index format needs
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class JsonParser {
+
+		/**
+		 * Reader to refill the buffer from, null if all text is in the buffer
+		 */
+		private final Reader reader;
+
+		/**
+		 * Characters read but not yet consumed
+		 */
+		private char[] buffer;
+
+		/**
+		 * Index of the next character in the buffer
+		 */
+		private int position;
+
+		/**
+		 * Number of characters in the buffer
+		 */
+		private int limit;
+
+		/**
+		 * Current line number, starting at 1
+		 */
+		private int line;
+
+		/**
+		 * Initializes a parser reading from a reader
+		 *
+		 * @param reader reader to parse
+		 */
+		public JsonParser(Reader reader) {
+			this.reader = reader;
+			this.buffer = new char[8192];
+			this.position = 0;
+			this.limit = 0;
+			this.line = 1;
+		}
+
+		/**
+		 * Initializes a parser over text already in memory
+		 *
+		 * @param text text to parse
+		 * @param line line number the text starts on
+		 */
+		public JsonParser(char[] text, int line) {
+			this.reader = null;
+			this.buffer = text;
+			this.position = 0;
+			this.limit = text.length;
+			this.line = line;
+		}
+
+		/**
+		 * Returns the current line number
+		 *
+		 * @return current line number
+		 */
+		public int line() {
+			return line;
+		}
+
+		/**
+		 * Makes sure there is a character to read, refilling the buffer if needed
+		 *
+		 * @return true if there is a character to read, false at the end of input
+		 * @throws IOException if an IO error occurs
+		 */
+		private boolean fill() throws IOException {
+			if (position < limit) {
+				return true;
+			}
+			if (reader == null) {
+				return false;
+			}
+
+			int read = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			limit = Math.max(read, 0);
+			return read > 0;
+		}
+
+		/**
+		 * Returns the next character without consuming it
+		 *
+		 * @return next character, -1 at the end of input
+		 * @throws IOException if an IO error occurs
+		 */
+		public int peek() throws IOException {
+			return fill() ? buffer[position] : -1;
+		}
+
+		/**
+		 * Consumes and returns the next character
+		 *
+		 * @return next character
+		 * @throws IOException if an IO error occurs or at the end of input
+		 */
+		public char next() throws IOException {
+			if (!fill()) {
+				throw error("unexpected end of input");
+			}
+			char c = buffer[position++];
+			if (c == '\n') {
+				line++;
+			}
+			return c;
+		}
+
+		/**
+		 * Skips whitespace, optionally copying it
+		 *
+		 * @param copy where to copy skipped whitespace, may be null
+		 * @throws IOException if an IO error occurs
+		 */
+		public void skipWhitespace(StringBuilder copy) throws IOException {
+			int c;
+			while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				next();
+				if (copy != null) {
+					copy.append((char) c);
+				}
+			}
+		}
+
+		/**
+		 * Skips whitespace and consumes the next character if it matches
+		 *
+		 * @param expected character to match
+		 * @return true if the character was consumed, else false
+		 * @throws IOException if an IO error occurs
+		 */
+		public boolean consume(char expected) throws IOException {
+			skipWhitespace(null);
+			if (peek() == expected) {
+				next();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Skips whitespace and consumes the next character, which must match
+		 *
+		 * @param expected character to match
+		 * @throws IOException if an IO error occurs or the character does not match
+		 */
+		public void expect(char expected) throws IOException {
+			if (!consume(expected)) {
+				throw error("expected '" + expected + "'");
+			}
+		}
+
+		/**
+		 * Skips whitespace and reads a string
+		 *
+		 * @return the string that was read
+		 * @throws IOException if an IO error occurs or there is no valid string
+		 */
+		public String readString() throws IOException {
+			expect('"');
+			StringBuilder text = new StringBuilder();
+
+			while (true) {
+				int start = position; // copy plain runs straight from the buffer
+				while (position < limit && buffer[position] != '"' && buffer[position] != '\\'
+						&& buffer[position] != '\n') {
+					position++;
+				}
+				text.append(buffer, start, position - start);
+
+				char c = next();
+				if (c == '"') {
+					return text.toString();
+				}
+				text.append(c == '\\' ? unescape() : c);
+			}
+		}
+
+		/**
+		 * Reads the rest of an escape sequence after its backslash
+		 *
+		 * @return the escaped character
+		 * @throws IOException if an IO error occurs or the escape is not valid
+		 */
+		private char unescape() throws IOException {
+			char c = next();
+			return switch (c) {
+				case '"', '\\', '/' -> c;
+				case 'b' -> '\b';
+				case 'f' -> '\f';
+				case 'n' -> '\n';
+				case 'r' -> '\r';
+				case 't' -> '\t';
+				case 'u' -> {
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(next(), 16);
+						if (digit < 0) {
+							throw error("invalid unicode escape");
+						}
+						code = code * 16 + digit;
+					}
+					yield (char) code;
+				}
+				default -> throw error("invalid escape '\\" + c + "'");
+			};
+		}
+
+		/**
+		 * Skips whitespace and reads an integer
+		 *
+		 * @return the integer that was read
+		 * @throws IOException if an IO error occurs or there is no valid integer
+		 */
+		public int readInt() throws IOException {
+			skipWhitespace(null);
+			boolean negative = peek() == '-';
+			if (negative) {
+				next();
+			}
+
+			long value = 0;
+			int digits = 0;
+			int c;
+			while ((c = peek()) >= '0' && c <= '9') {
+				next();
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE + 1L) {
+					throw error("number too large");
+				}
+				digits++;
+			}
+
+			if (digits == 0) {
+				throw error("expected a number");
+			}
+			value = negative ? -value : value;
+			if (value > Integer.MAX_VALUE) {
+				throw error("number too large");
+			}
+			return (int) value;
+		}
+
+		/**
+		 * Copies one complete member (a string key, colon, and its object or array
+		 * value) without interpreting it, tracking only strings and nesting
+		 *
+		 * @param copy where to copy the member
+		 * @throws IOException if an IO error occurs or the input ends early
+		 */
+		public void capture(StringBuilder copy) throws IOException {
+			if (peek() != '"') {
+				throw error("expected '\"'");
+			}
+
+			boolean string = false;
+			boolean escaped = false;
+			int depth = 0;
+			boolean opened = false;
+
+			while (true) {
+				if (!fill()) {
+					throw error("unexpected end of input");
+				}
+
+				int start = position;
+				while (position < limit) {
+					char c = buffer[position++];
+
+					if (c == '\n') {
+						line++;
+					} else if (escaped) {
+						escaped = false;
+					} else if (string) {
+						if (c == '\\') {
+							escaped = true;
+						} else if (c == '"') {
+							string = false;
+						}
+					} else if (c == '"') {
+						string = true;
+					} else if (c == '{' || c == '[') {
+						depth++;
+						opened = true;
+					} else if ((c == '}' || c == ']') && --depth <= 0) {
+						if (!opened || depth < 0) {
+							throw error("unexpected '" + c + "'");
+						}
+						copy.append(buffer, start, position - start);
+						return;
+					}
+				}
+				copy.append(buffer, start, position - start);
+			}
+		}
+
+		/**
+		 * Creates an exception for malformed input at the current line
+		 *
+		 * @param message description of the problem
+		 * @return exception to throw
+		 */
+		public IOException error(String message) {
+			return new IOException("Malformed index at line " + line + ": " + message);
+		}
+	}
+}
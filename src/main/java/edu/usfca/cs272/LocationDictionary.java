@@ -0,0 +1,211 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense integer document id to every location (file path or url) so
+ * the location string is only stored once, and postings and counts can refer
+ * to a location by id.
+ *
+ * Ids are never reassigned, so once an id has been handed out the location it
+ * resolves to will not change. The backing array is only replaced by a larger
+ * copy, which allows an id obtained under a lock to be resolved afterwards.
+ * Removing a location only marks its id as removed, and the location is given a
+ * new id if it is added again.
+ *
+ * Warning: This class is not thread-safe for concurrent writes. If multiple
+ * threads add locations concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class LocationDictionary {
+
+	/**
+	 * Initial number of locations to allocate space for
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Maps location to its document id
+	 */
+	private final Map<String, Integer> ids;
+
+	/**
+	 * Locations indexed by document id
+	 */
+	private volatile String[] locations;
+
+	/**
+	 * Number of ids assigned
+	 */
+	private int size;
+
+	/**
+	 * Ids of the removed locations
+	 */
+	private final BitSet removed;
+
+	/**
+	 * Number of removed ids
+	 */
+	private int removedCount;
+
+	/**
+	 * Initializes an empty dictionary
+	 */
+	public LocationDictionary() {
+		this.ids = new HashMap<>();
+		this.locations = new String[INITIAL_CAPACITY];
+		this.size = 0;
+		this.removed = new BitSet();
+		this.removedCount = 0;
+	}
+
+	/**
+	 * Returns the id of the location, assigning the next id if the location has
+	 * not been seen before
+	 *
+	 * @param location file path or url
+	 * @return document id of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+		if (id != null) {
+			return id;
+		}
+
+		String[] array = locations;
+		if (size == array.length) { // grow by copy so readers never see a partial array
+			array = Arrays.copyOf(array, array.length * 2);
+		}
+
+		array[size] = location;
+		locations = array;
+		ids.put(location, size);
+		return size++;
+	}
+
+	/**
+	 * Adds every location of another dictionary to this one, except the removed
+	 * ones
+	 *
+	 * @param other dictionary to add
+	 * @return array mapping the other dictionary's ids to ids in this dictionary,
+	 *         -1 for removed ids
+	 */
+	public int[] addAll(LocationDictionary other) {
+		int[] remap = new int[other.size];
+		for (int i = 0; i < other.size; i++) {
+			remap[i] = other.removed.get(i) ? -1 : add(other.locations[i]);
+		}
+		return remap;
+	}
+
+	/**
+	 * Removes a location, marking its id as removed
+	 *
+	 * @param location file path or url
+	 * @return the document id the location had, -1 if location DNE
+	 */
+	public int remove(String location) {
+		Integer id = ids.remove(location);
+		if (id == null) {
+			return -1;
+		}
+
+		removed.set(id);
+		removedCount++;
+		return id;
+	}
+
+	/**
+	 * Checks if a document id belongs to a removed location
+	 *
+	 * @param id document id
+	 * @return true if the location was removed, else false
+	 */
+	public boolean isRemoved(int id) {
+		return removed.get(id);
+	}
+
+	/**
+	 * Returns the id of the location
+	 *
+	 * @param location file path or url
+	 * @return document id, -1 if location DNE
+	 */
+	public int getId(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the location for a document id
+	 *
+	 * @param id document id
+	 * @return file path or url of the document
+	 */
+	public String getLocation(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the number of ids assigned, including removed ids
+	 *
+	 * @return number of ids
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of locations that have not been removed
+	 *
+	 * @return number of locations
+	 */
+	public int count() {
+		return size - removedCount;
+	}
+
+	/**
+	 * Returns the locations that have not been removed, in order of id
+	 *
+	 * @return list of locations
+	 */
+	private List<String> current() {
+		List<String> current = Arrays.asList(locations).subList(0, size);
+		if (removedCount == 0) {
+			return current;
+		}
+
+		ArrayList<String> kept = new ArrayList<>(count());
+		for (int id = 0; id < size; id++) {
+			if (!removed.get(id)) {
+				kept.add(locations[id]);
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Returns the locations in sorted order
+	 *
+	 * @return unmodifiable sorted list of locations
+	 */
+	public List<String> sorted() {
+		ArrayList<String> sorted = new ArrayList<>(current());
+		Collections.sort(sorted);
+		return Collections.unmodifiableList(sorted);
+	}
+
+	@Override
+	public String toString() {
+		return current().toString();
+	}
+}
@@ -0,0 +1,393 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, gauges, and latency histograms for the build, crawl, and
+ * search hot paths. Metrics are created the first time they are asked for and
+ * kept for the rest of the run, so classes usually keep the ones they update
+ * in static fields. Every metric is safe to update from any thread without
+ * locking.
+ *
+ * All metrics can be written as a JSON object, such as at the end of a run with
+ * -metrics or by the /metrics page of the {@link WebServer}.
+ *
+ * @author Athene Marston
+ */
+public class Metrics {
+
+	/**
+	 * Counters by name
+	 */
+	private static final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Gauges by name
+	 */
+	private static final ConcurrentSkipListMap<String, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Histograms by name
+	 */
+	private static final ConcurrentSkipListMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Returns the counter with a name, creating it if needed
+	 *
+	 * @param name name of the counter
+	 * @return the counter
+	 */
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * Sets the gauge with a name, which reads its value when the metrics are
+	 * written
+	 *
+	 * @param name  name of the gauge
+	 * @param value reads the current value of the gauge
+	 */
+	public static void gauge(String name, Supplier<? extends Number> value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * Returns the latency histogram with a name, creating it if needed
+	 *
+	 * @param name name of the histogram
+	 * @return the histogram
+	 */
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * Divides two numbers, returning 0 instead of dividing by 0. Useful for gauges
+	 * of rates.
+	 *
+	 * @param dividend the number to divide
+	 * @param divisor  the number to divide by
+	 * @return the quotient, or 0 if the divisor is 0
+	 */
+	public static double ratio(double dividend, double divisor) {
+		return divisor == 0 ? 0 : dividend / divisor;
+	}
+
+	/**
+	 * Writes every metric as a pretty JSON object with "counters", "gauges", and
+	 * "histograms" objects, sorted by name. Histogram times are in milliseconds.
+	 *
+	 * @param writer the writer to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeJson(Writer writer) throws IOException {
+		TreeMap<String, Number> values = new TreeMap<>();
+		for (var entry : counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+
+		writer.write("{\n");
+		JsonWriter.writeQuote("counters", writer, 1);
+		writer.write(": ");
+		JsonWriter.writeObject(values, writer, 1);
+		writer.write(",\n");
+
+		values.clear();
+		for (var entry : gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		JsonWriter.writeQuote("gauges", writer, 1);
+		writer.write(": ");
+		JsonWriter.writeObject(values, writer, 1);
+		writer.write(",\n");
+
+		JsonWriter.writeQuote("histograms", writer, 1);
+		writer.write(": {");
+		var iterator = histograms.entrySet().iterator();
+		while (iterator.hasNext()) {
+			var entry = iterator.next();
+			writer.write("\n");
+			JsonWriter.writeQuote(entry.getKey(), writer, 2);
+			writer.write(": ");
+			JsonWriter.writeObject(entry.getValue().summary(), writer, 2);
+			if (iterator.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write("\n");
+		JsonWriter.writeIndent(writer, 1);
+		writer.write("}\n}\n");
+	}
+
+	/**
+	 * Writes every metric as a pretty JSON object to file.
+	 *
+	 * @param path the file path to use
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see #writeJson(Writer)
+	 */
+	public static void writeJson(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeJson(writer);
+		}
+	}
+
+	/**
+	 * Returns every metric as a pretty JSON object.
+	 *
+	 * @return a {@link String} containing the metrics in pretty JSON format
+	 *
+	 * @see #writeJson(Writer)
+	 */
+	public static String toJson() {
+		try {
+			StringWriter writer = new StringWriter();
+			writeJson(writer);
+			return writer.toString();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A count that many threads can add to at once
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	public static class Counter {
+
+		/**
+		 * Current count
+		 */
+		private final LongAdder count;
+
+		/**
+		 * Initializes a counter at 0
+		 */
+		public Counter() {
+			this.count = new LongAdder();
+		}
+
+		/**
+		 * Adds 1 to the count
+		 */
+		public void increment() {
+			count.increment();
+		}
+
+		/**
+		 * Adds to the count
+		 *
+		 * @param amount amount to add, which may be negative
+		 */
+		public void add(long amount) {
+			count.add(amount);
+		}
+
+		/**
+		 * Returns the current count
+		 *
+		 * @return the count
+		 */
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * Distribution of latencies in nanoseconds. Each power of two is split into
+	 * {@link #SUB_BUCKETS} buckets, so a percentile is reported as the upper
+	 * bound of its bucket and is at most a quarter too high.
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	public static class Histogram {
+
+		/**
+		 * Number of buckets for each power of two
+		 */
+		public static final int SUB_BUCKETS = 4;
+
+		/**
+		 * Number of bits of a latency below its highest bit that pick its bucket
+		 */
+		private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+		/**
+		 * Number of latencies in each bucket
+		 */
+		private final AtomicLongArray buckets;
+
+		/**
+		 * Number of latencies recorded
+		 */
+		private final LongAdder count;
+
+		/**
+		 * Sum of the latencies recorded
+		 */
+		private final LongAdder sum;
+
+		/**
+		 * Largest latency recorded
+		 */
+		private final LongAccumulator max;
+
+		/**
+		 * Initializes an empty histogram
+		 */
+		public Histogram() {
+			this.buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+			this.count = new LongAdder();
+			this.sum = new LongAdder();
+			this.max = new LongAccumulator(Math::max, 0);
+		}
+
+		/**
+		 * Records a latency
+		 *
+		 * @param nanos the latency in nanoseconds
+		 */
+		public void record(long nanos) {
+			long value = Math.max(nanos, 0);
+			buckets.incrementAndGet(bucket(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		/**
+		 * Records the time since a start time
+		 *
+		 * @param start start time from {@link System#nanoTime()}
+		 */
+		public void recordSince(long start) {
+			record(System.nanoTime() - start);
+		}
+
+		/**
+		 * Returns the number of latencies recorded
+		 *
+		 * @return number of latencies
+		 */
+		public long count() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the sum of the latencies recorded
+		 *
+		 * @return sum in nanoseconds
+		 */
+		public long sum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Returns the latency that a percentage of the recorded latencies are at or
+		 * below, rounded up to the end of its bucket
+		 *
+		 * @param percent the percentage, from 0 to 100
+		 * @return the latency in nanoseconds, or 0 if nothing was recorded
+		 */
+		public long percentile(double percent) {
+			long total = 0;
+			long[] counts = new long[buckets.length()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+
+			long rank = (long) Math.ceil(total * percent / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (counts[i] > 0 && seen >= rank) {
+					return Math.min(upperBound(i), max.get());
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the count, mean, percentiles, and maximum of the latencies, with
+		 * times in milliseconds
+		 *
+		 * @return map from statistic names to values
+		 */
+		public Map<String, Number> summary() {
+			long count = count();
+			LinkedHashMap<String, Number> summary = new LinkedHashMap<>();
+			summary.put("count", count);
+			summary.put("mean", millis(ratio(sum(), count)));
+			summary.put("p50", millis(percentile(50)));
+			summary.put("p90", millis(percentile(90)));
+			summary.put("p95", millis(percentile(95)));
+			summary.put("p99", millis(percentile(99)));
+			summary.put("max", millis(max.get()));
+			return summary;
+		}
+
+		/**
+		 * Converts nanoseconds to milliseconds, rounded to microseconds
+		 *
+		 * @param nanos time in nanoseconds
+		 * @return time in milliseconds
+		 */
+		private static double millis(double nanos) {
+			return Math.round(nanos / 1000) / 1000.0;
+		}
+
+		/**
+		 * Returns the bucket of a latency
+		 *
+		 * @param value latency in nanoseconds, not negative
+		 * @return index of the bucket
+		 */
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS) { // too small to split, so each value has its own bucket
+				return (int) value;
+			}
+
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		/**
+		 * Returns the largest latency in a bucket
+		 *
+		 * @param bucket index of the bucket
+		 * @return latency in nanoseconds
+		 */
+		private static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+
+			int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = bucket % SUB_BUCKETS;
+			long lower = (1L << exponent) | (sub << (exponent - SUB_BITS));
+			return lower + (1L << (exponent - SUB_BITS)) - 1;
+		}
+	}
+}
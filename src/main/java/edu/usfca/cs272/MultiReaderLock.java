@@ -47,6 +47,12 @@ public class MultiReaderLock {
 	/** The log4j2 logger. */
 	private static final Logger log = LogManager.getLogger();
 
+	/** Time readers of any lock spent waiting, counting only readers that waited. */
+	private static final Metrics.Histogram READ_WAIT = Metrics.histogram("lock.readWait");
+
+	/** Time writers of any lock spent waiting, counting only writers that waited. */
+	private static final Metrics.Histogram WRITE_WAIT = Metrics.histogram("lock.writeWait");
+
 	/**
 	 * The lock object used for synchronized access of readers and writers. For
 	 * security reasons, a separate private final lock object is used.
@@ -163,12 +169,22 @@ public class MultiReaderLock {
 		@Override
 		public void lock() {
 			try {
+				long waited = -1; // recorded after leaving the monitor, so other threads are not held up
 				synchronized (lock) {
+					long start = 0;
 					while (writers > 0 && !isActiveWriter()) {
+						start = start == 0 ? System.nanoTime() : start;
 						lock.wait();
 					}
 
 					readers++;
+					if (start != 0) {
+						waited = System.nanoTime() - start;
+					}
+				}
+
+				if (waited >= 0) {
+					READ_WAIT.record(waited);
 				}
 			} catch (InterruptedException ex) {
 				log.catching(Level.DEBUG, ex);
@@ -210,13 +226,23 @@ public class MultiReaderLock {
 		@Override
 		public void lock() {
 			try {
+				long waited = -1; // measured under the monitor like the read lock, recorded outside it
 				synchronized (lock) {
+					long start = 0;
 					while ((readers > 0 || writers > 0) && !isActiveWriter()) {
+						start = start == 0 ? System.nanoTime() : start;
 						lock.wait();
 					}
 
 					activeWriter = Thread.currentThread();
 					writers++;
+					if (start != 0) {
+						waited = System.nanoTime() - start;
+					}
+				}
+
+				if (waited >= 0) {
+					WRITE_WAIT.record(waited);
 				}
 			} catch (InterruptedException ex) {
 				log.catching(Level.DEBUG, ex);
@@ -1,9 +1,17 @@
 package edu.usfca.cs272;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
@@ -33,6 +41,21 @@ public class MultithreadedSearchResults implements SearchResultsInterface {
 	 */
 	private final WorkQueue queue;
 
+	/**
+	 * Maximum number of FoundFiles to keep per query
+	 */
+	private final int limit;
+
+	/**
+	 * True if the time each query spends in each phase is traced
+	 */
+	private final boolean tracing;
+
+	/**
+	 * Traces of the queries searched, only kept if tracing
+	 */
+	private final ArrayList<QueryTrace> traces;
+
 	/**
 	 * Search Results constructor
 	 * 
@@ -40,9 +63,37 @@ public class MultithreadedSearchResults implements SearchResultsInterface {
 	 * @param queue WorkQueue to use
 	 */
 	public MultithreadedSearchResults(ThreadSafeInvertedIndex index, WorkQueue queue) {
+		this(index, queue, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search Results constructor that only keeps the top results of each query
+	 * 
+	 * @param index InvertedIndex to use
+	 * @param queue WorkQueue to use
+	 * @param limit maximum number of FoundFiles to keep per query
+	 */
+	public MultithreadedSearchResults(ThreadSafeInvertedIndex index, WorkQueue queue, int limit) {
+		this(index, queue, limit, false);
+	}
+
+	/**
+	 * Search Results constructor that only keeps the top results of each query,
+	 * and optionally traces how long each query spends stemming, looking up,
+	 * scoring, and sorting (see {@link QueryTrace})
+	 * 
+	 * @param index   InvertedIndex to use
+	 * @param queue   WorkQueue to use
+	 * @param limit   maximum number of FoundFiles to keep per query
+	 * @param tracing true to trace every query searched
+	 */
+	public MultithreadedSearchResults(ThreadSafeInvertedIndex index, WorkQueue queue, int limit, boolean tracing) {
 		this.results = new TreeMap<>();
 		this.index = index;
 		this.queue = queue;
+		this.limit = limit;
+		this.tracing = tracing;
+		this.traces = new ArrayList<>();
 	}
 
 	/**
@@ -65,6 +116,15 @@ public class MultithreadedSearchResults implements SearchResultsInterface {
 		results.put(queries, searchResults);
 	}
 
+	/**
+	 * Adds the trace of a searched query
+	 * 
+	 * @param trace the finished trace
+	 */
+	private synchronized void addTrace(QueryTrace trace) {
+		traces.add(trace);
+	}
+
 	@Override
 	public synchronized Set<String> getQueries() {
 		return Collections.unmodifiableSet(results.keySet());
@@ -88,6 +148,102 @@ public class MultithreadedSearchResults implements SearchResultsInterface {
 		JsonWriter.writeSearchResults(results, location);
 	}
 
+	/**
+	 * Writes the slow-query log as pretty JSON: the number of queries traced, the
+	 * 50th, 95th, and 99th percentile of the total and phase times, and an array
+	 * with the query and timings of every search at or above the threshold,
+	 * slowest first. Times are in milliseconds. Nothing is traced unless tracing was turned on.
+	 * 
+	 * @param location   the file path to use
+	 * @param slowMillis queries taking at least this long are logged
+	 * @throws IOException if an IO error occurs
+	 */
+	public synchronized void outputTraces(Path location, double slowMillis) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(location, UTF_8)) {
+			writeTraces(writer, slowMillis);
+		}
+	}
+
+	/**
+	 * Writes the slow-query log as pretty JSON
+	 * 
+	 * @param writer     the writer to use
+	 * @param slowMillis queries taking at least this long are logged
+	 * @throws IOException if an IO error occurs
+	 * 
+	 * @see #outputTraces(Path, double)
+	 */
+	private void writeTraces(Writer writer, double slowMillis) throws IOException {
+		writer.write("{\n");
+		JsonWriter.writeQuote("queries", writer, 1);
+		writer.write(": " + traces.size() + ",\n");
+		JsonWriter.writeQuote("threshold", writer, 1);
+		writer.write(": " + slowMillis + ",\n");
+
+		JsonWriter.writeQuote("summary", writer, 1);
+		writer.write(": {");
+		long[] times = new long[traces.size()];
+		for (int phase = -1; phase < QueryTrace.PHASES.length; phase++) { // -1 for the total
+			for (int i = 0; i < times.length; i++) {
+				times[i] = phase < 0 ? traces.get(i).getTotal() : traces.get(i).getTime(phase);
+			}
+
+			writer.write(phase < 0 ? "\n" : ",\n");
+			JsonWriter.writeQuote(phase < 0 ? "total" : QueryTrace.PHASES[phase], writer, 2);
+			writer.write(": ");
+			JsonWriter.writeObject(percentiles(times), writer, 2);
+		}
+		writer.write("\n");
+		JsonWriter.writeIndent(writer, 1);
+		writer.write("},\n");
+
+		ArrayList<QueryTrace> slow = new ArrayList<>();
+		for (QueryTrace trace : traces) {
+			if (QueryTrace.millis(trace.getTotal()) >= slowMillis) {
+				slow.add(trace);
+			}
+		}
+		slow.sort(Comparator.comparingLong(QueryTrace::getTotal).reversed());
+
+		JsonWriter.writeQuote("slow", writer, 1);
+		writer.write(": [");
+		for (int i = 0; i < slow.size(); i++) { // an array, since the same query may be slow more than once
+			writer.write(i == 0 ? "\n" : ",\n");
+			JsonWriter.writeIndent(writer, 2);
+			writer.write("{\n");
+			JsonWriter.writeQuote("query", writer, 3);
+			writer.write(": ");
+			JsonWriter.writeQuote(slow.get(i).getQuery(), writer, 0);
+			for (var entry : slow.get(i).toMap().entrySet()) {
+				writer.write(",");
+				JsonWriter.writeObjectEntry(null, writer, 2, entry);
+			}
+			writer.write("\n");
+			JsonWriter.writeIndent(writer, 2);
+			writer.write("}");
+		}
+		writer.write("\n");
+		JsonWriter.writeIndent(writer, 1);
+		writer.write("]\n}\n");
+	}
+
+	/**
+	 * Returns the 50th, 95th, and 99th percentile of some times, using the
+	 * nearest rank
+	 * 
+	 * @param times times in nanoseconds, sorted in place
+	 * @return map from percentile names to times in milliseconds
+	 */
+	private static LinkedHashMap<String, Number> percentiles(long[] times) {
+		Arrays.sort(times);
+		LinkedHashMap<String, Number> percentiles = new LinkedHashMap<>();
+		for (int percent : new int[] { 50, 95, 99 }) {
+			int rank = (int) Math.ceil(times.length * percent / 100.0);
+			percentiles.put("p" + percent, times.length == 0 ? 0 : QueryTrace.millis(times[Math.max(rank, 1) - 1]));
+		}
+		return percentiles;
+	}
+
 	@Override
 	public synchronized String toString() {
 		return results.toString();
@@ -138,13 +294,26 @@ public class MultithreadedSearchResults implements SearchResultsInterface {
 
 		@Override
 		public void run() {
-			TreeSet<String> getQueries = FileStemmer.uniqueStems(line);
-			String queries = String.join(" ", getQueries);
+			QueryTrace trace = tracing ? QueryTrace.begin() : null;
+			String queries = null;
+			ArrayList<FoundFile> searchResults = null;
+
+			try {
+				TreeSet<String> getQueries = FileStemmer.uniqueStems(line);
+				queries = String.join(" ", getQueries);
 
-			if (!hasQuery(queries)) {
-				if (!getQueries.isEmpty()) {
-					ArrayList<FoundFile> searchResults = index.search(getQueries, isPartial);
-					add(queries, searchResults);
+				if (!hasQuery(queries)) {
+					if (!getQueries.isEmpty()) {
+						searchResults = index.search(getQueries, isPartial, limit);
+						add(queries, searchResults);
+					}
+				}
+			} finally {
+				if (trace != null) { // always ends, so a later search on this thread is not charged to it
+					trace.end(queries, searchResults == null ? 0 : searchResults.size());
+					if (searchResults != null) {
+						addTrace(trace);
+					}
 				}
 			}
 		}
@@ -0,0 +1,385 @@
+package edu.usfca.cs272;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compact sorted set of word positions for a single word stem and location.
+ * Positions are stored as the gaps between consecutive positions using a
+ * variable-byte encoding (7 bits per byte, high bit set on every byte except
+ * the last), so the common case of small increasing positions costs one or two
+ * bytes each instead of a boxed {@link Integer} inside a tree node.
+ *
+ * Positions are expected to arrive in increasing order, which is appended in
+ * constant time. Out of order positions are still supported, but require the
+ * list to be decoded and re-encoded.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class PositionList extends AbstractCollection<Integer> {
+
+	/**
+	 * Initial capacity (in bytes) of the encoded positions
+	 */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/**
+	 * Variable-byte encoded gaps between sorted positions
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Number of bytes in use
+	 */
+	private int length;
+
+	/**
+	 * Number of positions stored
+	 */
+	private int size;
+
+	/**
+	 * Largest (last) position stored, used to encode the next gap
+	 */
+	private int last;
+
+	/**
+	 * Initializes an empty list
+	 */
+	public PositionList() {
+		this.bytes = new byte[INITIAL_CAPACITY];
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Initializes a list with a copy of another list
+	 *
+	 * @param other list to copy
+	 */
+	public PositionList(PositionList other) {
+		this.bytes = Arrays.copyOf(other.bytes, other.length);
+		this.length = other.length;
+		this.size = other.size;
+		this.last = other.last;
+	}
+
+	/**
+	 * Adds a position if not already in list
+	 *
+	 * @param position word position
+	 * @return true if added, else false
+	 */
+	public boolean add(int position) {
+		if (size == 0 || position > last) { // common case, append the gap
+			write(position - last);
+			last = position;
+			size++;
+			return true;
+		}
+
+		if (position == last || contains(position)) {
+			return false;
+		}
+
+		int[] positions = toIntArray();
+		int insert = -Arrays.binarySearch(positions, position) - 1;
+
+		int[] merged = new int[positions.length + 1];
+		System.arraycopy(positions, 0, merged, 0, insert);
+		merged[insert] = position;
+		System.arraycopy(positions, insert, merged, insert + 1, positions.length - insert);
+
+		encode(merged, merged.length);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds all positions from another list. Appending a list whose positions all
+	 * come after the positions in this list only copies the encoded bytes.
+	 *
+	 * @param other list of positions to add
+	 * @return true if this list changed, else false
+	 */
+	public boolean addAll(PositionList other) {
+		if (other.size == 0) {
+			return false;
+		}
+
+		PrimitiveIterator.OfInt iter = other.iterator();
+		int first = iter.nextInt();
+
+		if (size == 0 || first > last) { // re-encode the first gap, copy the rest
+			write(first - last);
+			int offset = skip(other.bytes, 0);
+			ensureCapacity(length + other.length - offset);
+			System.arraycopy(other.bytes, offset, bytes, length, other.length - offset);
+			length += other.length - offset;
+			size += other.size;
+			last = other.last;
+			return true;
+		}
+
+		int[] positions = toIntArray();
+		int[] merged = new int[positions.length + other.size];
+		int count = 0;
+		int i = 0;
+		int next = first;
+		boolean hasNext = true;
+
+		while (i < positions.length || hasNext) { // merge the two sorted lists
+			if (!hasNext || (i < positions.length && positions[i] < next)) {
+				merged[count++] = positions[i++];
+			} else {
+				if (i < positions.length && positions[i] == next) {
+					i++;
+				}
+				merged[count++] = next;
+				hasNext = iter.hasNext();
+				next = hasNext ? iter.nextInt() : 0;
+			}
+		}
+
+		boolean modified = count != size;
+		encode(merged, count);
+		return modified;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer position && contains(position.intValue());
+	}
+
+	/**
+	 * Checks if position exists in list
+	 *
+	 * @param position word position
+	 * @return true if the list contains the position, else false
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last) {
+			return false;
+		}
+
+		PrimitiveIterator.OfInt iter = iterator();
+		while (iter.hasNext()) {
+			int current = iter.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest position stored
+	 *
+	 * @return largest position, 0 if the list is empty
+	 */
+	public int last() {
+		return last;
+	}
+
+	/**
+	 * Returns the number of bytes used to store the encoded positions
+	 *
+	 * @return number of encoded bytes
+	 */
+	public int encodedSize() {
+		return length;
+	}
+
+	/**
+	 * Returns the positions as a sorted array
+	 *
+	 * @return sorted array of positions
+	 */
+	public int[] toIntArray() {
+		int[] positions = new int[size];
+		PrimitiveIterator.OfInt iter = iterator();
+		for (int i = 0; i < size; i++) {
+			positions[i] = iter.nextInt();
+		}
+		return positions;
+	}
+
+	/**
+	 * Writes the list in its encoded form: the number of positions, the last
+	 * position, the number of encoded bytes, and then the bytes themselves
+	 *
+	 * @param out output to write to
+	 * @throws IOException if an IO error occurs
+	 * @see #readFrom(ByteBuffer)
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(last);
+		out.writeInt(length);
+		out.write(bytes, 0, length);
+	}
+
+	/**
+	 * Reads a list written by {@link #writeTo(DataOutput)}. The encoded bytes are
+	 * copied as they are, without decoding the positions.
+	 *
+	 * @param buffer buffer to read from
+	 * @return the list that was read
+	 * @throws IllegalArgumentException if the sizes read are negative
+	 */
+	public static PositionList readFrom(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		int last = buffer.getInt();
+		int length = buffer.getInt();
+		if (size < 0 || last < 0 || length < size) {
+			throw new IllegalArgumentException("Invalid encoded position list.");
+		}
+
+		PositionList list = new PositionList();
+		list.bytes = new byte[length];
+		buffer.get(list.bytes);
+		list.length = length;
+		list.size = size;
+		list.last = last;
+		return list;
+	}
+
+	/**
+	 * Shrinks the backing array to the number of bytes in use
+	 */
+	public void trimToSize() {
+		if (bytes.length > length) {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return new PositionIterator();
+	}
+
+	/**
+	 * Replaces the contents of this list with the given sorted positions
+	 *
+	 * @param positions sorted, unique positions
+	 * @param count     number of positions to use from the array
+	 */
+	private void encode(int[] positions, int count) {
+		bytes = new byte[Math.max(INITIAL_CAPACITY, count + count / 2)];
+		length = 0;
+		size = 0;
+		last = 0;
+
+		for (int i = 0; i < count; i++) {
+			write(positions[i] - last);
+			last = positions[i];
+			size++;
+		}
+	}
+
+	/**
+	 * Appends a single variable-byte encoded value
+	 *
+	 * @param value value to encode (treated as unsigned)
+	 */
+	private void write(int value) {
+		ensureCapacity(length + 5);
+		while ((value & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+
+	/**
+	 * Grows the backing array if needed
+	 *
+	 * @param capacity minimum number of bytes needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	/**
+	 * Returns the offset just after the encoded value starting at offset
+	 *
+	 * @param bytes  encoded bytes
+	 * @param offset start of an encoded value
+	 * @return offset of the next encoded value
+	 */
+	private static int skip(byte[] bytes, int offset) {
+		while ((bytes[offset] & 0x80) != 0) {
+			offset++;
+		}
+		return offset + 1;
+	}
+
+	/**
+	 * Iterator that decodes the positions in order
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private class PositionIterator implements PrimitiveIterator.OfInt {
+
+		/**
+		 * Offset of the next encoded gap
+		 */
+		private int offset = 0;
+
+		/**
+		 * Last decoded position
+		 */
+		private int current = 0;
+
+		@Override
+		public boolean hasNext() {
+			return offset < length;
+		}
+
+		@Override
+		public int nextInt() {
+			if (offset >= length) {
+				throw new NoSuchElementException();
+			}
+
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			current += value;
+			return current;
+		}
+
+		@Override
+		public Integer next() {
+			return nextInt();
+		}
+	}
+
+}
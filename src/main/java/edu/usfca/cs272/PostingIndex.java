@@ -0,0 +1,181 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Maps word stems to their posting lists. Stems are given term ids by a
+ * {@link TermDictionary}, and the posting list of each stem is stored at its
+ * term id. The slot of a removed stem is emptied, and filled again by the next
+ * new stem, which is given the same term id.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class PostingIndex implements Iterable<Entry<String, PostingList>> {
+
+	/**
+	 * Assigns term ids to word stems, and finds word stems by prefix
+	 */
+	private final TermDictionary terms;
+
+	/**
+	 * Posting lists indexed by term id
+	 */
+	private final ArrayList<PostingList> postings;
+
+	/**
+	 * Initializes an empty index
+	 */
+	public PostingIndex() {
+		this.terms = new TermDictionary();
+		this.postings = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the posting list of a stem
+	 *
+	 * @param word word stem
+	 * @return posting list of stem, null if stem DNE
+	 */
+	public PostingList get(String word) {
+		int term = terms.get(word);
+		return term < 0 ? null : postings.get(term);
+	}
+
+	/**
+	 * Returns the posting list of a stem, adding an empty list if the stem is not
+	 * in the index yet
+	 *
+	 * @param word word stem
+	 * @return posting list of stem
+	 */
+	public PostingList getOrCreate(String word) {
+		int term = terms.add(word);
+		if (term == postings.size()) { // new term
+			postings.add(new PostingList());
+		} else if (postings.get(term) == null) { // new term given a removed term's id
+			postings.set(term, new PostingList());
+		}
+		return postings.get(term);
+	}
+
+	/**
+	 * Sets the posting list of a stem, replacing any list it already had
+	 *
+	 * @param word word stem
+	 * @param list posting list of stem
+	 */
+	public void put(String word, PostingList list) {
+		int term = terms.add(word);
+		if (term == postings.size()) { // new term
+			postings.add(list);
+		} else {
+			postings.set(term, list);
+		}
+	}
+
+	/**
+	 * Removes a stem and its posting list
+	 *
+	 * @param word word stem
+	 * @return the posting list of the stem, null if stem DNE
+	 */
+	public PostingList remove(String word) {
+		int term = terms.remove(word);
+		return term < 0 ? null : postings.set(term, null);
+	}
+
+	/**
+	 * Removes documents from every posting list, and removes the stems left
+	 * without any documents
+	 *
+	 * @param removed returns true for the document ids to remove
+	 */
+	public void removeDocuments(IntPredicate removed) {
+		ArrayList<String> emptied = new ArrayList<>();
+		for (Entry<String, PostingList> entry : this) {
+			PostingList list = entry.getValue();
+			if (list.removeIf(removed) && list.size() == 0) {
+				emptied.add(entry.getKey());
+			}
+		}
+
+		for (String word : emptied) { // removed after iterating, since removing changes the trie
+			remove(word);
+		}
+	}
+
+	/**
+	 * Checks if stem is in the index
+	 *
+	 * @param word word stem
+	 * @return true if the index contains the stem, else false
+	 */
+	public boolean contains(String word) {
+		return terms.contains(word);
+	}
+
+	/**
+	 * Returns the number of stems in the index
+	 *
+	 * @return number of stems
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Passes the posting list of every stem starting with the prefix to the
+	 * action, in sorted stem order
+	 *
+	 * @param prefix prefix to match
+	 * @param action action to perform on every matching posting list
+	 */
+	public void forEachPrefix(String prefix, Consumer<PostingList> action) {
+		terms.forEachPrefix(prefix, term -> action.accept(postings.get(term)));
+	}
+
+	/**
+	 * Returns the stems in sorted order
+	 *
+	 * @return unmodifiable sorted list of stems
+	 */
+	public List<String> terms() {
+		return terms.terms();
+	}
+
+	/**
+	 * Returns an iterator over the stems and their posting lists in sorted stem
+	 * order
+	 */
+	@Override
+	public Iterator<Entry<String, PostingList>> iterator() {
+		Iterator<Entry<String, Integer>> iterator = terms.iterator();
+
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Entry<String, PostingList> next() {
+				Entry<String, Integer> entry = iterator.next();
+				return Map.entry(entry.getKey(), postings.get(entry.getValue()));
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return terms.toString();
+	}
+}
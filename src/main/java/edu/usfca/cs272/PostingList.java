@@ -0,0 +1,423 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The documents a single word stem occurs in, stored as a sorted array of
+ * document ids with a parallel array of the positions in each document.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class PostingList {
+
+	/**
+	 * Initial number of documents to allocate space for
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/**
+	 * Sorted document ids
+	 */
+	private int[] docs;
+
+	/**
+	 * Positions in each document, parallel to docs
+	 */
+	private PositionList[] positions;
+
+	/**
+	 * Number of documents in list
+	 */
+	private int size;
+
+	/**
+	 * Highest score any single document gets from this word stem, NaN if it has
+	 * to be recalculated
+	 */
+	private volatile double bound;
+
+	/**
+	 * Initializes an empty posting list
+	 */
+	public PostingList() {
+		this.docs = new int[INITIAL_CAPACITY];
+		this.positions = new PositionList[INITIAL_CAPACITY];
+		this.size = 0;
+		this.bound = Double.NaN;
+	}
+
+	/**
+	 * Initializes a posting list with a copy of another list, including copies of
+	 * its positions
+	 *
+	 * @param other list to copy
+	 */
+	public PostingList(PostingList other) {
+		this.docs = Arrays.copyOf(other.docs, other.size);
+		this.positions = new PositionList[other.size];
+		this.size = other.size;
+		this.bound = other.bound;
+
+		for (int i = 0; i < size; i++) {
+			positions[i] = new PositionList(other.positions[i]);
+		}
+	}
+
+	/**
+	 * Initializes a posting list with a copy of another list, including copies of
+	 * its positions, translating its document ids with the given mapping.
+	 * Documents mapped to a negative id are left out. The mapping must keep the
+	 * remaining ids in the same order.
+	 *
+	 * @param other list to copy
+	 * @param remap mapping from the other list's document ids to this list's ids
+	 */
+	public PostingList(PostingList other, int[] remap) {
+		this.docs = new int[other.size];
+		this.positions = new PositionList[other.size];
+		this.size = 0;
+		this.bound = Double.NaN;
+
+		for (int i = 0; i < other.size; i++) {
+			int doc = remap[other.docs[i]];
+			if (doc >= 0) {
+				docs[size] = doc;
+				positions[size++] = new PositionList(other.positions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of documents in the list
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document id at the given index
+	 *
+	 * @param index index in list (0 to size - 1)
+	 * @return document id
+	 */
+	public int doc(int index) {
+		return docs[index];
+	}
+
+	/**
+	 * Returns the positions at the given index
+	 *
+	 * @param index index in list (0 to size - 1)
+	 * @return positions of the word stem in the document
+	 */
+	public PositionList positions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Returns the number of positions at the given index
+	 *
+	 * @param index index in list (0 to size - 1)
+	 * @return number of occurrences of the word stem in the document
+	 */
+	public int frequency(int index) {
+		return positions[index].size();
+	}
+
+	/**
+	 * Returns the index of a document in the list
+	 *
+	 * @param doc document id
+	 * @return index of document if found, else (-(insertion point) - 1)
+	 */
+	public int indexOf(int doc) {
+		if (size > 0 && docs[size - 1] == doc) { // documents are usually added in order
+			return size - 1;
+		}
+		return Arrays.binarySearch(docs, 0, size, doc);
+	}
+
+	/**
+	 * Returns the index of the first document at or after the starting index with
+	 * an id of at least the given document, galloping ahead before searching so
+	 * nearby documents are found quickly
+	 *
+	 * @param from index to start from
+	 * @param doc  document id to find
+	 * @return index of the first document id greater than or equal to doc, size
+	 *         if there is none
+	 */
+	public int seek(int from, int doc) {
+		if (from >= size || docs[from] >= doc) {
+			return from;
+		}
+
+		int low = from;
+		int step = 1;
+		while (low + step < size && docs[low + step] < doc) { // docs[low] is always less than doc
+			low += step;
+			step <<= 1;
+		}
+
+		int index = Arrays.binarySearch(docs, low + 1, Math.min(low + step + 1, size), doc);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	/**
+	 * Returns the highest score (occurrences divided by document length) any
+	 * single document gets from this word stem. The bound is calculated once and
+	 * then cached until the list changes. Documents only get longer, so a cached
+	 * bound is still an upper bound after word counts grow. Removed documents have
+	 * a length of 0 and are skipped. Concurrent readers may both calculate it, but
+	 * always store the same value.
+	 *
+	 * @param lengths word counts indexed by document id
+	 * @return upper bound on the score of any document from this word stem
+	 */
+	public double bound(int[] lengths) {
+		double bound = this.bound;
+		if (Double.isNaN(bound)) {
+			bound = 0;
+			for (int i = 0; i < size; i++) {
+				if (lengths[docs[i]] > 0) {
+					bound = Math.max(bound, (double) positions[i].size() / lengths[docs[i]]);
+				}
+			}
+			this.bound = bound;
+		}
+		return bound;
+	}
+
+	/**
+	 * Returns the positions for a document
+	 *
+	 * @param doc document id
+	 * @return positions of the word stem in the document, null if DNE
+	 */
+	public PositionList get(int doc) {
+		int index = indexOf(doc);
+		return index < 0 ? null : positions[index];
+	}
+
+	/**
+	 * Returns the positions for a document, adding an empty list if the document
+	 * is not in the list yet
+	 *
+	 * @param doc document id
+	 * @return positions of the word stem in the document
+	 */
+	private PositionList getOrCreate(int doc) {
+		int index = indexOf(doc);
+		if (index >= 0) {
+			return positions[index];
+		}
+
+		PositionList created = new PositionList();
+		insert(-index - 1, doc, created);
+		return created;
+	}
+
+	/**
+	 * Adds a position for a document, adding the document if needed
+	 *
+	 * @param doc      document id
+	 * @param position position of the word stem in the document
+	 * @return true if the position was added, false if already present
+	 */
+	public boolean add(int doc, int position) {
+		boolean modified = getOrCreate(doc).add(position);
+		if (modified) {
+			bound = Double.NaN;
+		}
+		return modified;
+	}
+
+	/**
+	 * Adds the positions of a document, adding the document if needed. A new
+	 * document is given the list itself rather than a copy.
+	 *
+	 * @param doc  document id
+	 * @param list positions of the word stem in the document
+	 */
+	public void add(int doc, PositionList list) {
+		int index = indexOf(doc);
+		if (index >= 0) {
+			positions[index].addAll(list);
+		} else {
+			insert(-index - 1, doc, list);
+		}
+		bound = Double.NaN;
+	}
+
+	/**
+	 * Adds all documents from another posting list, translating its document ids
+	 * with the given mapping. Documents mapped to a negative id are left out.
+	 * Position lists for documents not already in this list are shared rather
+	 * than copied, and the other list should not be used afterwards.
+	 *
+	 * @param other posting list to add
+	 * @param remap mapping from the other list's document ids to this list's ids
+	 */
+	public void addAll(PostingList other, int[] remap) {
+		// translate ids, sorting by new id (packed with the old index) if needed
+		long[] sorted = new long[other.size];
+		int count = 0;
+		boolean inOrder = true;
+		for (int i = 0; i < other.size; i++) {
+			int doc = remap[other.docs[i]];
+			if (doc >= 0) {
+				sorted[count] = ((long) doc << 32) | i;
+				inOrder = inOrder && (count == 0 || sorted[count] > sorted[count - 1]);
+				count++;
+			}
+		}
+
+		if (count == 0) {
+			return;
+		}
+		bound = Double.NaN;
+
+		if (count < sorted.length) {
+			sorted = Arrays.copyOf(sorted, count);
+		}
+		if (!inOrder) {
+			Arrays.sort(sorted);
+		}
+
+		int first = (int) (sorted[0] >>> 32);
+		if (size == 0 || first > docs[size - 1]) { // append after the last document
+			ensureCapacity(size + sorted.length);
+			for (long packed : sorted) {
+				docs[size] = (int) (packed >>> 32);
+				positions[size] = other.positions[(int) packed];
+				size++;
+			}
+			return;
+		}
+
+		int[] mergedDocs = new int[size + sorted.length];
+		PositionList[] mergedPositions = new PositionList[size + sorted.length];
+		count = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < size || j < sorted.length) { // merge the two sorted lists
+			int otherDoc = j < sorted.length ? (int) (sorted[j] >>> 32) : Integer.MAX_VALUE;
+
+			if (j >= sorted.length || (i < size && docs[i] < otherDoc)) {
+				mergedDocs[count] = docs[i];
+				mergedPositions[count++] = positions[i++];
+			} else if (i < size && docs[i] == otherDoc) {
+				positions[i].addAll(other.positions[(int) sorted[j++]]);
+				mergedDocs[count] = docs[i];
+				mergedPositions[count++] = positions[i++];
+			} else {
+				mergedDocs[count] = otherDoc;
+				mergedPositions[count++] = other.positions[(int) sorted[j++]];
+			}
+		}
+
+		docs = mergedDocs;
+		positions = mergedPositions;
+		size = count;
+	}
+
+	/**
+	 * Removes every document the predicate matches
+	 *
+	 * @param removed returns true for the document ids to remove
+	 * @return true if any document was removed, else false
+	 */
+	public boolean removeIf(IntPredicate removed) {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (!removed.test(docs[i])) {
+				docs[count] = docs[i];
+				positions[count++] = positions[i];
+			}
+		}
+
+		if (count == size) {
+			return false;
+		}
+
+		Arrays.fill(positions, count, size, null);
+		size = count;
+		bound = Double.NaN;
+		return true;
+	}
+
+	/**
+	 * Returns this list without the documents the predicate matches, sharing
+	 * positions with this list
+	 *
+	 * @param removed returns true for the document ids to leave out
+	 * @return this list if no documents match, else a new list without them
+	 */
+	public PostingList without(IntPredicate removed) {
+		PostingList kept = null;
+		for (int i = 0; i < size; i++) {
+			if (removed.test(docs[i])) {
+				if (kept == null) { // copy everything before the first removed document
+					kept = new PostingList();
+					kept.ensureCapacity(size);
+					System.arraycopy(docs, 0, kept.docs, 0, i);
+					System.arraycopy(positions, 0, kept.positions, 0, i);
+					kept.size = i;
+				}
+			} else if (kept != null) {
+				kept.docs[kept.size] = docs[i];
+				kept.positions[kept.size++] = positions[i];
+			}
+		}
+		return kept == null ? this : kept;
+	}
+
+	/**
+	 * Grows the backing arrays if needed
+	 *
+	 * @param capacity minimum number of documents needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > docs.length) {
+			int grown = Math.max(capacity, docs.length * 2);
+			docs = Arrays.copyOf(docs, grown);
+			positions = Arrays.copyOf(positions, grown);
+		}
+	}
+
+	/**
+	 * Inserts a document at the given index
+	 *
+	 * @param index index to insert at
+	 * @param doc   document id
+	 * @param list  positions in the document
+	 */
+	private void insert(int index, int doc, PositionList list) {
+		ensureCapacity(size + 1);
+
+		if (index < size) {
+			System.arraycopy(docs, index, docs, index + 1, size - index);
+			System.arraycopy(positions, index, positions, index + 1, size - index);
+		}
+
+		docs[index] = doc;
+		positions[index] = list;
+		size++;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (int i = 0; i < size; i++) {
+			builder.append(i == 0 ? "" : ", ").append(docs[i]).append('=').append(positions[i]);
+		}
+		return builder.append('}').toString();
+	}
+}
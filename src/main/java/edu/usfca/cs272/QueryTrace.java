@@ -0,0 +1,209 @@
+package edu.usfca.cs272;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings of a single search query, split into the time spent stemming the
+ * query line, looking up the posting lists of its stems, scoring the matched
+ * documents, and sorting the top results. A trace is started on the thread
+ * running the query, and the search code marks where each phase begins with
+ * {@link #phase(int)}, which does nothing unless the current thread is
+ * tracing. Time is always charged to the current phase, so the phases add up
+ * to the total even when one query searches several indexes (see
+ * {@link SegmentedInvertedIndex}).
+ *
+ * @author Athene Marston
+ */
+public class QueryTrace {
+
+	/**
+	 * Phase of stemming the query line
+	 */
+	public static final int STEM = 0;
+
+	/**
+	 * Phase of looking up the posting lists of the query stems, including waiting
+	 * for the index lock
+	 */
+	public static final int LOOKUP = 1;
+
+	/**
+	 * Phase of scoring the documents in the matched posting lists
+	 */
+	public static final int SCORE = 2;
+
+	/**
+	 * Phase of sorting the results
+	 */
+	public static final int SORT = 3;
+
+	/**
+	 * Names of the phases indexed by phase
+	 */
+	public static final String[] PHASES = { "stem", "lookup", "score", "sort" };
+
+	/**
+	 * Trace of the query running on each thread, or null if the thread is not
+	 * tracing
+	 */
+	private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Nanoseconds spent in each phase indexed by phase
+	 */
+	private final long[] times;
+
+	/**
+	 * Phase currently being timed
+	 */
+	private int current;
+
+	/**
+	 * When the current phase began, from {@link System#nanoTime()}
+	 */
+	private long since;
+
+	/**
+	 * Cleaned query (its sorted unique stems), set once the query ends
+	 */
+	private String query;
+
+	/**
+	 * Number of results returned, set once the query ends
+	 */
+	private int results;
+
+	/**
+	 * Initializes a trace starting in the stem phase now
+	 */
+	private QueryTrace() {
+		this.times = new long[PHASES.length];
+		this.current = STEM;
+		this.since = System.nanoTime();
+		this.query = null;
+		this.results = 0;
+	}
+
+	/**
+	 * Starts tracing a query on the current thread, beginning with the stem phase
+	 *
+	 * @return the new trace
+	 */
+	public static QueryTrace begin() {
+		QueryTrace trace = new QueryTrace();
+		CURRENT.set(trace);
+		return trace;
+	}
+
+	/**
+	 * Ends the current phase and begins another, if the current thread is tracing
+	 * a query
+	 *
+	 * @param phase the phase to begin
+	 */
+	public static void phase(int phase) {
+		QueryTrace trace = CURRENT.get();
+		if (trace != null) {
+			trace.switchTo(phase);
+		}
+	}
+
+	/**
+	 * Charges the time since the current phase began to it and begins another
+	 *
+	 * @param phase the phase to begin
+	 */
+	private void switchTo(int phase) {
+		long now = System.nanoTime();
+		times[current] += now - since;
+		since = now;
+		current = phase;
+	}
+
+	/**
+	 * Ends the current phase and stops tracing on the current thread
+	 *
+	 * @param query   the cleaned query
+	 * @param results number of results returned
+	 */
+	public void end(String query, int results) {
+		switchTo(current);
+		this.query = query;
+		this.results = results;
+		CURRENT.remove();
+	}
+
+	/**
+	 * Returns the cleaned query
+	 *
+	 * @return the query, or null if it has not ended
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the number of results returned
+	 *
+	 * @return number of results
+	 */
+	public int getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns the time spent in a phase
+	 *
+	 * @param phase the phase
+	 * @return time in nanoseconds
+	 */
+	public long getTime(int phase) {
+		return times[phase];
+	}
+
+	/**
+	 * Returns the time spent in every phase
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the total and phase times in milliseconds followed by the number of
+	 * results, in a form that can be written with
+	 * {@link JsonWriter#writeObject(Map, java.io.Writer, int)}
+	 *
+	 * @return map from names to values
+	 */
+	public Map<String, Number> toMap() {
+		LinkedHashMap<String, Number> map = new LinkedHashMap<>();
+		map.put("total", millis(getTotal()));
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			map.put(PHASES[phase], millis(times[phase]));
+		}
+		map.put("results", results);
+		return map;
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds, rounded to microseconds
+	 *
+	 * @param nanos time in nanoseconds
+	 * @return time in milliseconds
+	 */
+	public static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return query + " " + toMap();
+	}
+}
@@ -0,0 +1,121 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-search scratch space that adds up the number of query word
+ * matches per document. Counts are stored in an array indexed by document id,
+ * and the ids of the documents touched by the current search are remembered so
+ * only those entries need to be visited and cleared afterwards.
+ *
+ * Warning: This class is not thread-safe. Each searching thread should use its
+ * own accumulator (see {@link ThreadLocal}).
+ *
+ * @author Athene Marston
+ */
+public class ScoreAccumulator {
+
+	/**
+	 * Number of matches indexed by document id
+	 */
+	private int[] matches;
+
+	/**
+	 * Ids of documents with at least one match, in the order first matched
+	 */
+	private int[] touched;
+
+	/**
+	 * Number of documents with at least one match
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty accumulator
+	 */
+	public ScoreAccumulator() {
+		this.matches = new int[0];
+		this.touched = new int[0];
+		this.size = 0;
+	}
+
+	/**
+	 * Prepares the accumulator for a new search
+	 *
+	 * @param documents number of documents that may be matched
+	 */
+	public void reset(int documents) {
+		clear();
+		if (matches.length < documents) {
+			matches = new int[documents];
+			touched = new int[documents];
+		}
+	}
+
+	/**
+	 * Adds the matches of every document in a posting list
+	 *
+	 * @param postings posting list of a matching word stem
+	 */
+	public void addAll(PostingList postings) {
+		for (int i = 0; i < postings.size(); i++) {
+			add(postings.doc(i), postings.frequency(i));
+		}
+	}
+
+	/**
+	 * Adds matches for a document
+	 *
+	 * @param doc    document id
+	 * @param amount number of matches to add
+	 */
+	public void add(int doc, int amount) {
+		if (matches[doc] == 0) {
+			touched[size++] = doc;
+		}
+		matches[doc] += amount;
+	}
+
+	/**
+	 * Returns the number of documents with at least one match
+	 *
+	 * @return number of matched documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of a matched document
+	 *
+	 * @param index index of the matched document (0 to size - 1)
+	 * @return document id
+	 */
+	public int doc(int index) {
+		return touched[index];
+	}
+
+	/**
+	 * Returns the number of matches for a document
+	 *
+	 * @param doc document id
+	 * @return number of matches
+	 */
+	public int matches(int doc) {
+		return matches[doc];
+	}
+
+	/**
+	 * Clears the matches of the current search
+	 */
+	public void clear() {
+		if (size > matches.length / 4) { // cheaper to clear everything at once
+			Arrays.fill(matches, 0);
+		} else {
+			for (int i = 0; i < size; i++) {
+				matches[touched[i]] = 0;
+			}
+		}
+		size = 0;
+	}
+}
@@ -37,14 +37,30 @@ public class SearchResults implements SearchResultsInterface {
 	 */
 	private final SnowballStemmer stemmer = new SnowballStemmer(ENGLISH);
 
+	/**
+	 * Maximum number of FoundFiles to keep per query
+	 */
+	private final int limit;
+
 	/**
 	 * Search Results constructor
 	 * 
 	 * @param index InvertedIndex to use
 	 */
 	public SearchResults(InvertedIndex index) {
+		this(index, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search Results constructor that only keeps the top results of each query
+	 * 
+	 * @param index InvertedIndex to use
+	 * @param limit maximum number of FoundFiles to keep per query
+	 */
+	public SearchResults(InvertedIndex index, int limit) {
 		this.results = new TreeMap<>();
 		this.index = index;
+		this.limit = limit;
 	}
 
 	@Override
@@ -54,7 +70,7 @@ public class SearchResults implements SearchResultsInterface {
 
 		if (!results.containsKey(queries)) {
 			if (!getQueries.isEmpty()) {
-				ArrayList<FoundFile> searchResults = index.search(getQueries, isPartial);
+				ArrayList<FoundFile> searchResults = index.search(getQueries, isPartial, limit);
 				results.put(queries, searchResults);
 			}
 		}
@@ -0,0 +1,674 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe inverted index that keeps merged local indexes as immutable
+ * segments instead of merging them into one large index. Added local indexes
+ * are gathered into a pending index until {@link #SEGMENT_SIZE} documents build
+ * up or {@link #publish()} is called, which appends the pending index to the
+ * list of segments, and once enough segments of the same tier build up, a
+ * background task on the work queue merges them into one segment of the next
+ * tier. Like a snapshot mode {@link ThreadSafeInvertedIndex}, reads only see
+ * pending documents once published. Reads fan out across the current segments,
+ * which never change once added, so searching them takes no locks.
+ *
+ * Each location is kept in one segment, found through a map from locations to
+ * segments, since segments are searched independently. A location added again
+ * is merged with the segment holding it by replacing that segment with a merged
+ * copy, so its positions are combined just as in
+ * {@link InvertedIndex#addAll(InvertedIndex)}. Words added directly with
+ * {@link #addInvertedIndex(String, String, Integer)} or
+ * {@link #addAll(List, String)} go to the striped index inherited from
+ * {@link ThreadSafeInvertedIndex}, which is read alongside the segments.
+ * Removing a location from a segment replaces that segment with a copy without
+ * the location, so segments are still never modified.
+ *
+ * @author Athene Marston
+ *
+ */
+public class SegmentedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/**
+	 * Number of segments of the same tier that are merged together
+	 */
+	public static final int MERGE_FACTOR = 4;
+
+	/**
+	 * Number of pending documents that are added as a segment without waiting
+	 * for {@link #publish()}
+	 */
+	public static final int SEGMENT_SIZE = 256;
+
+	/**
+	 * The work queue background merges run on
+	 */
+	private final WorkQueue queue;
+
+	/**
+	 * Current segments, replaced (never modified) whenever a segment is added or
+	 * merged
+	 */
+	private volatile List<Segment> segments;
+
+	/**
+	 * Map from every location in a segment to that segment, only changed while
+	 * holding this index's monitor
+	 */
+	private final ConcurrentHashMap<String, Segment> owners;
+
+	/**
+	 * Added documents that are not yet in a segment (guarded by this index's
+	 * monitor)
+	 */
+	private InvertedIndex pending;
+
+	/**
+	 * True once words have been added directly to the inherited index
+	 */
+	private volatile boolean live;
+
+	/**
+	 * Number of distinct word stems in the segments, counted once for each list
+	 * of segments
+	 */
+	private volatile WordCount wordCount;
+
+	/**
+	 * Initializes an index without segments
+	 *
+	 * @param queue WorkQueue to run background merges on
+	 */
+	public SegmentedInvertedIndex(WorkQueue queue) {
+		super(false);
+		this.queue = queue;
+		this.segments = Collections.emptyList();
+		this.owners = new ConcurrentHashMap<>();
+		this.pending = new InvertedIndex();
+		this.live = false;
+	}
+
+	/**
+	 * Returns the number of segments
+	 *
+	 * @return number of segments
+	 */
+	public int segments() {
+		return segments.size();
+	}
+
+	@Override
+	public boolean addInvertedIndex(String word, String location, Integer position) {
+		live = true;
+		return super.addInvertedIndex(word, location, position);
+	}
+
+	@Override
+	public boolean addAll(List<String> words, String location) {
+		live = true;
+		return super.addAll(words, location);
+	}
+
+	@Override
+	public boolean addPositions(String location, Map<String, PositionList> positions) {
+		live = true;
+		return super.addPositions(location, positions);
+	}
+
+	/**
+	 * Adds another inverted index to the pending documents, which are added as a
+	 * new segment once there are enough of them. The other index should not be
+	 * modified afterwards, since its position lists may now be shared with this
+	 * index.
+	 *
+	 * @param other InvertedIndex to add
+	 */
+	@Override
+	public synchronized void addAll(InvertedIndex other) {
+		if (other.countsSize() == 0) {
+			return;
+		}
+
+		pending.addAll(other);
+		if (pending.countsSize() >= SEGMENT_SIZE) {
+			flush();
+		}
+	}
+
+	/**
+	 * Adds the pending documents as a segment, so reads see them
+	 */
+	@Override
+	public synchronized void publish() {
+		flush();
+		super.publish();
+	}
+
+	/**
+	 * Appends the pending documents as a segment of the lowest tier and schedules
+	 * any merges it allows. Pending locations that are already in the index are
+	 * merged with it: the segments holding them are replaced by one merged copy
+	 * of the same tier, or if words were added directly for one, everything is
+	 * merged into the inherited index instead.
+	 */
+	private synchronized void flush() {
+		InvertedIndex index = pending;
+		if (index.countsSize() == 0) {
+			return;
+		}
+		pending = new InvertedIndex();
+
+		LinkedHashSet<Segment> holding = new LinkedHashSet<>();
+		boolean direct = false;
+		for (String location : index.getLocations()) {
+			Segment segment = owners.get(location);
+			if (segment != null) {
+				holding.add(segment);
+			} else if (live && super.currentCountsContains(location)) {
+				direct = true;
+			}
+		}
+
+		ArrayList<Segment> updated = new ArrayList<>(segments);
+		updated.removeAll(holding);
+
+		if (direct) { // keeps every location in one place
+			for (Segment segment : holding) {
+				for (String location : segment.index.getLocations()) {
+					owners.remove(location);
+				}
+				super.addAll(new InvertedIndex(segment.index)); // copied, since positions may be merged into
+			}
+			super.addAll(index);
+		} else {
+			int tier = 0;
+			InvertedIndex merged = index;
+			if (!holding.isEmpty()) {
+				merged = new InvertedIndex();
+				for (Segment segment : holding) {
+					merged.addAll(new InvertedIndex(segment.index));
+					tier = Math.max(tier, segment.tier);
+				}
+				merged.addAll(index);
+			}
+
+			Segment segment = new Segment(merged, tier);
+			for (String location : merged.getLocations()) {
+				owners.put(location, segment);
+			}
+			updated.add(segment);
+		}
+
+		segments = Collections.unmodifiableList(updated);
+		scheduleMerges();
+	}
+
+	/**
+	 * Starts a background merge for every tier with enough segments that are not
+	 * already being merged
+	 */
+	private synchronized void scheduleMerges() {
+		TreeMap<Integer, ArrayList<Segment>> tiers = new TreeMap<>();
+		for (Segment segment : segments) {
+			if (!segment.merging) {
+				tiers.computeIfAbsent(segment.tier, tier -> new ArrayList<>()).add(segment);
+			}
+		}
+
+		for (var entry : tiers.entrySet()) {
+			List<Segment> waiting = entry.getValue();
+			for (int i = 0; i + MERGE_FACTOR <= waiting.size(); i += MERGE_FACTOR) {
+				List<Segment> merging = List.copyOf(waiting.subList(i, i + MERGE_FACTOR));
+				for (Segment segment : merging) {
+					segment.merging = true;
+				}
+				queue.execute(new MergeTask(merging, entry.getKey() + 1));
+			}
+		}
+	}
+
+	/**
+	 * Removes a location, replacing the segment that contains it with a copy
+	 * without the location. A pending copy of the location is removed too.
+	 *
+	 * @param location file path or url
+	 * @return true if the location was removed, false if location DNE
+	 */
+	@Override
+	public synchronized boolean removeLocation(String location) {
+		boolean removed = pending.removeLocation(location);
+
+		if (live && super.currentCountsContains(location)) {
+			return super.removeLocation(location) || removed;
+		}
+
+		Segment segment = owners.get(location);
+		if (segment == null) {
+			return removed;
+		}
+
+		InvertedIndex copy = new InvertedIndex(segment.index);
+		copy.removeLocation(location);
+		owners.remove(location);
+
+		ArrayList<Segment> updated = new ArrayList<>(segments);
+		int i = updated.indexOf(segment);
+		if (copy.countsSize() == 0) {
+			updated.remove(i);
+		} else {
+			Segment replacement = new Segment(new InvertedIndex(copy), segment.tier); // copied again to compact it
+			for (String other : replacement.index.getLocations()) {
+				owners.put(other, replacement);
+			}
+			updated.set(i, replacement);
+		}
+		segments = Collections.unmodifiableList(updated);
+		scheduleMerges();
+		return true;
+	}
+
+	/**
+	 * Replaces the word stems of a location. The old words are removed before the
+	 * new words are added, so reads in between may not find the location.
+	 *
+	 * @param location file path or url
+	 * @param words    list of word stems in the location
+	 * @return true if all added, else false
+	 */
+	@Override
+	public boolean replaceLocation(String location, List<String> words) {
+		removeLocation(location);
+		return addAll(words, location);
+	}
+
+	/**
+	 * Replaces merged segments with the segment they were merged into, unless a
+	 * location was removed from one of them during the merge, in which case the
+	 * merge is dropped and scheduled again
+	 *
+	 * @param merged segments that were merged
+	 * @param result segment they were merged into
+	 */
+	private synchronized void replace(List<Segment> merged, Segment result) {
+		if (!segments.containsAll(merged)) {
+			for (Segment segment : merged) {
+				segment.merging = false;
+			}
+			scheduleMerges();
+			return;
+		}
+
+		ArrayList<Segment> updated = new ArrayList<>(segments.size());
+		for (Segment segment : segments) {
+			if (!merged.contains(segment)) {
+				updated.add(segment);
+			}
+		}
+		for (String location : result.index.getLocations()) {
+			owners.put(location, result);
+		}
+		updated.add(result);
+		segments = Collections.unmodifiableList(updated);
+		scheduleMerges();
+	}
+
+	/**
+	 * Returns the segment that contains a location
+	 *
+	 * @param location file path or url
+	 * @return the index of the segment containing the location, null if DNE
+	 */
+	private InvertedIndex segmentOf(String location) {
+		Segment segment = owners.get(location);
+		return segment != null ? segment.index : null;
+	}
+
+	/**
+	 * Returns a deep copy of the index as last added, with every segment, the
+	 * pending documents, and any words added directly merged together
+	 *
+	 * @return merged copy of the index
+	 */
+	@Override
+	protected synchronized InvertedIndex copy() {
+		InvertedIndex merged = live ? super.copy() : new InvertedIndex();
+		for (Segment segment : segments) {
+			merged.addAll(new InvertedIndex(segment.index));
+		}
+		merged.addAll(new InvertedIndex(pending));
+		return merged;
+	}
+
+	/**
+	 * Sorts results gathered from several segments and keeps only the top ones
+	 *
+	 * @param results FoundFiles from every segment
+	 * @param limit   maximum number of FoundFiles to return
+	 * @return the sorted list of the top FoundFiles
+	 */
+	private static ArrayList<FoundFile> top(ArrayList<FoundFile> results, int limit) {
+		QueryTrace.phase(QueryTrace.SORT);
+		Collections.sort(results);
+		if (results.size() > limit) {
+			results.subList(Math.max(limit, 0), results.size()).clear();
+		}
+		return results;
+	}
+
+	@Override
+	public boolean countsContains(String location) {
+		return segmentOf(location) != null || (live && super.countsContains(location));
+	}
+
+	@Override
+	protected boolean currentCountsContains(String location) {
+		synchronized (this) {
+			if (pending.countsContains(location)) {
+				return true;
+			}
+		}
+		return segmentOf(location) != null || (live && super.currentCountsContains(location));
+	}
+
+	@Override
+	public boolean indexContains(String word) {
+		for (Segment segment : segments) {
+			if (segment.index.indexContains(word)) {
+				return true;
+			}
+		}
+		return live && super.indexContains(word);
+	}
+
+	@Override
+	public boolean indexContains(String word, String location) {
+		InvertedIndex segment = segmentOf(location);
+		return segment != null ? segment.indexContains(word, location) : live && super.indexContains(word, location);
+	}
+
+	@Override
+	public boolean indexContains(String word, String location, int position) {
+		InvertedIndex segment = segmentOf(location);
+		return segment != null ? segment.indexContains(word, location, position)
+				: live && super.indexContains(word, location, position);
+	}
+
+	@Override
+	public void outputCounts(Path location) throws IOException {
+		JsonWriter.writeObject(getCounts(), location);
+	}
+
+	@Override
+	public void outputIndex(Path location) throws IOException {
+		copy().outputIndex(location);
+	}
+
+	@Override
+	public void outputIndex(Writer writer) throws IOException {
+		copy().outputIndex(writer);
+	}
+
+	@Override
+	public Integer size() {
+		List<Segment> current = segments;
+		WordCount counted = wordCount;
+		if (counted == null || counted.segments != current) {
+			counted = new WordCount(current);
+			wordCount = counted;
+		}
+
+		int size = counted.count;
+		if (live) { // words added directly, unless a segment has them too
+			for (String word : super.getWords()) {
+				if (!WordCount.contains(current, current.size(), word)) {
+					size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int size(String word) {
+		int size = live ? super.size(word) : 0;
+		for (Segment segment : segments) {
+			size += segment.index.size(word);
+		}
+		return size;
+	}
+
+	@Override
+	public int size(String word, String location) {
+		InvertedIndex segment = segmentOf(location);
+		return segment != null ? segment.size(word, location) : live ? super.size(word, location) : 0;
+	}
+
+	@Override
+	public int countsSize() {
+		int size = live ? super.countsSize() : 0;
+		for (Segment segment : segments) {
+			size += segment.index.countsSize();
+		}
+		return size;
+	}
+
+	@Override
+	public int getWordCount(String location) {
+		InvertedIndex segment = segmentOf(location);
+		return segment != null ? segment.getWordCount(location) : live ? super.getWordCount(location) : 0;
+	}
+
+	@Override
+	public Collection<String> getWords() {
+		TreeSet<String> words = live ? new TreeSet<>(super.getWords()) : new TreeSet<>();
+		for (Segment segment : segments) {
+			words.addAll(segment.index.getWords());
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Collection<String> getLocations() {
+		ArrayList<String> locations = live ? new ArrayList<>(super.getLocations()) : new ArrayList<>();
+		for (Segment segment : segments) {
+			locations.addAll(segment.index.getLocations());
+		}
+		Collections.sort(locations);
+		return Collections.unmodifiableList(locations);
+	}
+
+	@Override
+	public Map<String, Integer> getCounts() {
+		TreeMap<String, Integer> counts = live ? new TreeMap<>(super.getCounts()) : new TreeMap<>();
+		for (Segment segment : segments) {
+			counts.putAll(segment.index.getCounts());
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public Collection<String> getLocations(String word) {
+		TreeSet<String> locations = live ? new TreeSet<>(super.getLocations(word)) : new TreeSet<>();
+		for (Segment segment : segments) {
+			locations.addAll(segment.index.getLocations(word));
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Collection<Integer> getPositions(String word, String location) {
+		InvertedIndex segment = segmentOf(location);
+		return segment != null ? segment.getPositions(word, location)
+				: live ? super.getPositions(word, location) : Collections.emptySet();
+	}
+
+	@Override
+	public String toString() {
+		return copy().toString();
+	}
+
+	@Override
+	public ArrayList<FoundFile> exactSearch(Set<String> queries, int limit) {
+		ArrayList<FoundFile> results = live ? super.exactSearch(queries, limit) : new ArrayList<>();
+		for (Segment segment : segments) { // each location is in one segment, so its score is complete there
+			results.addAll(segment.index.exactSearch(queries, limit));
+		}
+		return top(results, limit);
+	}
+
+	@Override
+	public ArrayList<FoundFile> partialSearch(Set<String> queries, int limit) {
+		ArrayList<FoundFile> results = live ? super.partialSearch(queries, limit) : new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.partialSearch(queries, limit));
+		}
+		return top(results, limit);
+	}
+
+	/**
+	 * An immutable index and the tier it belongs to
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class Segment {
+
+		/**
+		 * Index of the segment, never modified once added
+		 */
+		private final InvertedIndex index;
+
+		/**
+		 * Number of merges the segment has been through
+		 */
+		private final int tier;
+
+		/**
+		 * True while the segment is being merged (guarded by the outer index)
+		 */
+		private boolean merging;
+
+		/**
+		 * Initializes a segment
+		 *
+		 * @param index index of the segment
+		 * @param tier  tier of the segment
+		 */
+		public Segment(InvertedIndex index, int tier) {
+			this.index = index;
+			this.tier = tier;
+			this.merging = false;
+		}
+	}
+
+	/**
+	 * The number of distinct word stems in a list of segments
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class WordCount {
+
+		/**
+		 * Segments that were counted
+		 */
+		private final List<Segment> segments;
+
+		/**
+		 * Number of distinct word stems in the segments
+		 */
+		private final int count;
+
+		/**
+		 * Counts the distinct word stems in segments, each the first time a
+		 * segment has it
+		 *
+		 * @param segments segments to count
+		 */
+		public WordCount(List<Segment> segments) {
+			int count = 0;
+			for (int i = 0; i < segments.size(); i++) {
+				for (String word : segments.get(i).index.getWords()) {
+					if (!contains(segments, i, word)) {
+						count++;
+					}
+				}
+			}
+			this.segments = segments;
+			this.count = count;
+		}
+
+		/**
+		 * Checks if one of the first segments has a word stem
+		 *
+		 * @param segments segments to check
+		 * @param end      number of segments to check, from the start
+		 * @param word     word stem to find
+		 * @return true if one of the segments has the word stem
+		 */
+		private static boolean contains(List<Segment> segments, int end, String word) {
+			for (int i = 0; i < end; i++) {
+				if (segments.get(i).index.indexContains(word)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Class for Runnable 'merge segments' task objects to execute
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private class MergeTask implements Runnable {
+
+		/**
+		 * Segments to merge
+		 */
+		private final List<Segment> merging;
+
+		/**
+		 * Tier of the merged segment
+		 */
+		private final int tier;
+
+		/**
+		 * Constructor for tasks
+		 *
+		 * @param merging segments to merge
+		 * @param tier    tier of the merged segment
+		 */
+		public MergeTask(List<Segment> merging, int tier) {
+			this.merging = merging;
+			this.tier = tier;
+		}
+
+		@Override
+		public void run() {
+			InvertedIndex merged = new InvertedIndex();
+			for (Segment segment : merging) { // locations are disjoint, so position lists are shared but never changed
+				merged.addAll(segment.index);
+			}
+			replace(merging, new Segment(merged, tier));
+		}
+
+		@Override
+		public String toString() {
+			return "merge of " + merging.size() + " segments into tier " + tier;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package edu.usfca.cs272;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Bounded cache of stems in front of another {@link Stemmer}. Natural-language
+ * text repeats the same few thousand words constantly, so most words are found
+ * in the cache and skip the stemmer entirely. While a word stays in its slot,
+ * finding it again returns the same stem {@link String} instance, and a word
+ * found in a reused buffer (see {@link TextTokenizer}) is looked up without
+ * creating a string. Stems are not interned: each thread has its own cache, so
+ * different threads (or the same thread after a word is replaced) return
+ * different but equal instances.
+ *
+ * The cache is a fixed-size table where each word has a single slot, so a word
+ * that is not cached replaces whichever word was in its slot. Frequent words are
+ * stemmed again right away if they are replaced, so they stay cached.
+ *
+ * Warning: This class is not thread-safe. Each thread should use its own
+ * cache, such as the one returned by {@link #english()}.
+ *
+ * @author Athene Marston
+ */
+public class StemCache implements Stemmer {
+
+	/**
+	 * Default number of slots in the cache
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 14;
+
+	/**
+	 * Per-thread cache of the English Snowball stemmer
+	 */
+	private static final ThreadLocal<StemCache> ENGLISH_CACHES = ThreadLocal
+			.withInitial(() -> new StemCache(new SnowballStemmer(ENGLISH), DEFAULT_CAPACITY));
+
+	/**
+	 * Number of words found in a cache, counted on every hit (the adder keeps a
+	 * cell per contending thread, so this stays cheap)
+	 */
+	private static final Metrics.Counter HITS = Metrics.counter("stems.hits");
+
+	/**
+	 * Number of words stemmed by the stemmer
+	 */
+	private static final Metrics.Counter MISSES = Metrics.counter("stems.misses");
+
+	static {
+		Metrics.gauge("stems.hitRate", () -> Metrics.ratio(HITS.get(), HITS.get() + MISSES.get()));
+	}
+
+	/**
+	 * Stemmer used for words that are not cached
+	 */
+	private final Stemmer stemmer;
+
+	/**
+	 * Cached words indexed by slot
+	 */
+	private final String[] words;
+
+	/**
+	 * Stems of the cached words indexed by slot
+	 */
+	private final String[] stems;
+
+	/**
+	 * Mask of the slot bits of a hash
+	 */
+	private final int mask;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param stemmer  stemmer to use for words that are not cached
+	 * @param capacity number of slots, rounded up to a power of two
+	 */
+	public StemCache(Stemmer stemmer, int capacity) {
+		int slots = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.stemmer = stemmer;
+		this.words = new String[slots];
+		this.stems = new String[slots];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Returns this thread's cache of the English Snowball stemmer
+	 *
+	 * @return English stem cache of the current thread
+	 */
+	public static StemCache english() {
+		return ENGLISH_CACHES.get();
+	}
+
+	/**
+	 * Returns the stem of a word, from the cache if possible
+	 *
+	 * @param word the word to stem
+	 * @return the stem (always a {@link String})
+	 */
+	@Override
+	public CharSequence stem(CharSequence word) {
+		int slot = hash(word) & mask;
+		String cached = words[slot];
+		if (cached != null && cached.contentEquals(word)) {
+			HITS.increment();
+			return stems[slot];
+		}
+
+		MISSES.increment();
+
+		String key = word.toString();
+		String stem = stemmer.stem(key).toString();
+		if (stem.equals(key)) { // most short words are their own stem, so only keep one copy
+			stem = key;
+		}
+
+		words[slot] = key;
+		stems[slot] = stem;
+		return stem;
+	}
+
+	/**
+	 * Hashes the characters of a word the same way as {@link String#hashCode()},
+	 * spreading the high bits into the low bits used for the slot
+	 *
+	 * @param word word to hash
+	 * @return hash of the word
+	 */
+	private static int hash(CharSequence word) {
+		int hash = 0;
+		for (int i = 0; i < word.length(); i++) {
+			hash = 31 * hash + word.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
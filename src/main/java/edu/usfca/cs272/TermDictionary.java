@@ -0,0 +1,517 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * Maps word stems to dense integer term ids using a compressed trie (radix
+ * tree). Stems that share a prefix share the nodes for that prefix, and every
+ * stem starting with a given prefix is found by walking down to the prefix once
+ * and then visiting only the subtree below it, so prefix lookups take time
+ * proportional to the length of the prefix plus the number of matches.
+ *
+ * Children are kept sorted by character, so stems are always visited in the
+ * same order as {@link String#compareTo(String)}. Removing a term prunes the
+ * nodes it no longer needs and frees its id for the next new term, so terms
+ * that come and go do not grow the dictionary.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Athene Marston
+ */
+public class TermDictionary implements Iterable<Entry<String, Integer>> {
+
+	/**
+	 * Shared empty array for nodes without children
+	 */
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	/**
+	 * Root of the trie (represents the empty string)
+	 */
+	private final Node root;
+
+	/**
+	 * Number of terms stored
+	 */
+	private int size;
+
+	/**
+	 * Next term id to assign once no freed ids are left
+	 */
+	private int next;
+
+	/**
+	 * Ids of removed terms, reused before assigning new ones
+	 */
+	private int[] free;
+
+	/**
+	 * Number of freed ids
+	 */
+	private int freed;
+
+	/**
+	 * Initializes an empty dictionary
+	 */
+	public TermDictionary() {
+		this.root = new Node(new char[0]);
+		this.size = 0;
+		this.next = 0;
+		this.free = new int[16];
+		this.freed = 0;
+	}
+
+	/**
+	 * Returns the id of the term, assigning a freed or the next id if the term
+	 * is not in the dictionary
+	 *
+	 * @param term word stem
+	 * @return term id
+	 */
+	public int add(String term) {
+		Node node = root;
+		int i = 0;
+
+		while (i < term.length()) {
+			int index = node.find(term.charAt(i));
+
+			if (index < 0) { // no child shares the next character, add a leaf
+				Node leaf = new Node(term.substring(i).toCharArray());
+				leaf.id = nextId();
+				size++;
+				node.insert(-index - 1, leaf);
+				return leaf.id;
+			}
+
+			Node child = node.children[index];
+			int matched = child.match(term, i);
+
+			if (matched < child.label.length) { // split the edge where the term differs
+				Node split = new Node(Arrays.copyOf(child.label, matched));
+				child.label = Arrays.copyOfRange(child.label, matched, child.label.length);
+				split.children = new Node[] { child };
+				node.children[index] = split;
+				child = split;
+			}
+
+			node = child;
+			i += matched;
+		}
+
+		if (node.id < 0) {
+			node.id = nextId();
+			size++;
+		}
+		return node.id;
+	}
+
+	/**
+	 * Returns the id for a new term, reusing the id of a removed term if any
+	 *
+	 * @return term id
+	 */
+	private int nextId() {
+		return freed > 0 ? free[--freed] : next++;
+	}
+
+	/**
+	 * Returns the id of the term
+	 *
+	 * @param term word stem
+	 * @return term id, -1 if term DNE
+	 */
+	public int get(String term) {
+		Node node = find(term);
+		return node == null ? -1 : node.id;
+	}
+
+	/**
+	 * Removes a term, pruning the nodes no other term needs. Its id may be given
+	 * to the next new term.
+	 *
+	 * @param term word stem
+	 * @return the id the term had, -1 if term DNE
+	 */
+	public int remove(String term) {
+		ArrayList<Node> path = new ArrayList<>(); // from the root down to the term
+		Node node = root;
+		path.add(node);
+		int i = 0;
+
+		while (i < term.length()) {
+			int index = node.find(term.charAt(i));
+			if (index < 0) {
+				return -1;
+			}
+
+			node = node.children[index];
+			if (node.match(term, i) < node.label.length) {
+				return -1;
+			}
+			i += node.label.length;
+			path.add(node);
+		}
+
+		if (node.id < 0) {
+			return -1;
+		}
+
+		int id = node.id;
+		node.id = -1;
+		size--;
+
+		if (freed == free.length) {
+			free = Arrays.copyOf(free, freed * 2);
+		}
+		free[freed++] = id;
+
+		prune(path);
+		return id;
+	}
+
+	/**
+	 * Removes the nodes on a path that no longer hold a term or lead to one, and
+	 * merges a node left with one child into that child, from the bottom up
+	 *
+	 * @param path nodes from the root down to a removed term
+	 */
+	private static void prune(List<Node> path) {
+		for (int i = path.size() - 1; i > 0; i--) { // the root is never pruned
+			Node node = path.get(i);
+			Node parent = path.get(i - 1);
+
+			if (node.id >= 0) {
+				return;
+			}
+
+			if (node.children.length == 0) { // the parent may now be left empty too
+				parent.delete(parent.find(node.label[0]));
+				continue;
+			}
+
+			if (node.children.length == 1) { // keep the trie compressed
+				Node child = node.children[0];
+				char[] label = Arrays.copyOf(node.label, node.label.length + child.label.length);
+				System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+				child.label = label;
+				parent.children[parent.find(label[0])] = child;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Returns the node a term ends at
+	 *
+	 * @param term word stem
+	 * @return node of the term (which may not hold a term), null if DNE
+	 */
+	private Node find(String term) {
+		Node node = root;
+		int i = 0;
+
+		while (i < term.length()) {
+			int index = node.find(term.charAt(i));
+			if (index < 0) {
+				return null;
+			}
+
+			node = node.children[index];
+			if (node.match(term, i) < node.label.length) {
+				return null;
+			}
+			i += node.label.length;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Checks if the term is in the dictionary
+	 *
+	 * @param term word stem
+	 * @return true if the dictionary contains the term, else false
+	 */
+	public boolean contains(String term) {
+		return get(term) >= 0;
+	}
+
+	/**
+	 * Returns the number of terms in the dictionary
+	 *
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Passes the id of every term starting with the prefix to the action, in
+	 * sorted term order
+	 *
+	 * @param prefix prefix to match
+	 * @param action action to perform on every matching term id
+	 */
+	public void forEachPrefix(String prefix, IntConsumer action) {
+		Node node = root;
+		int i = 0;
+
+		while (i < prefix.length()) {
+			int index = node.find(prefix.charAt(i));
+			if (index < 0) {
+				return;
+			}
+
+			node = node.children[index];
+			int matched = node.match(prefix, i);
+
+			if (i + matched == prefix.length()) { // prefix ends inside (or at the end of) this edge
+				break;
+			}
+			if (matched < node.label.length) { // prefix differs from this edge
+				return;
+			}
+			i += matched;
+		}
+
+		visit(node, action);
+	}
+
+	/**
+	 * Passes the id of every term in the subtree to the action, in sorted order
+	 *
+	 * @param node   root of the subtree
+	 * @param action action to perform on every term id
+	 */
+	private static void visit(Node node, IntConsumer action) {
+		if (node.id >= 0) {
+			action.accept(node.id);
+		}
+		for (Node child : node.children) {
+			visit(child, action);
+		}
+	}
+
+	/**
+	 * Returns the terms in sorted order
+	 *
+	 * @return unmodifiable sorted list of terms
+	 */
+	public List<String> terms() {
+		ArrayList<String> terms = new ArrayList<>(size);
+		for (Entry<String, Integer> entry : this) {
+			terms.add(entry.getKey());
+		}
+		return Collections.unmodifiableList(terms);
+	}
+
+	/**
+	 * Returns an iterator over the terms and their ids in sorted term order
+	 */
+	@Override
+	public Iterator<Entry<String, Integer>> iterator() {
+		return new TermIterator();
+	}
+
+	@Override
+	public String toString() {
+		return terms().toString();
+	}
+
+	/**
+	 * A node in the trie, labeled with the characters on the edge leading to it
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private static class Node {
+
+		/**
+		 * Characters on the edge from the parent to this node
+		 */
+		private char[] label;
+
+		/**
+		 * Id of the term ending at this node, -1 if no term ends here
+		 */
+		private int id;
+
+		/**
+		 * Children sorted by the first character of their label
+		 */
+		private Node[] children;
+
+		/**
+		 * Initializes a node without a term or children
+		 *
+		 * @param label characters on the edge to this node
+		 */
+		public Node(char[] label) {
+			this.label = label;
+			this.id = -1;
+			this.children = NO_CHILDREN;
+		}
+
+		/**
+		 * Finds the child whose label starts with the character
+		 *
+		 * @param c first character of the label
+		 * @return index of child if found, else (-(insertion point) - 1)
+		 */
+		public int find(char c) {
+			int low = 0;
+			int high = children.length - 1;
+
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				char first = children[mid].label[0];
+
+				if (first < c) {
+					low = mid + 1;
+				} else if (first > c) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		/**
+		 * Inserts a child at the given index
+		 *
+		 * @param index index to insert at
+		 * @param child node to insert
+		 */
+		public void insert(int index, Node child) {
+			Node[] grown = new Node[children.length + 1];
+			System.arraycopy(children, 0, grown, 0, index);
+			grown[index] = child;
+			System.arraycopy(children, index, grown, index + 1, children.length - index);
+			children = grown;
+		}
+
+		/**
+		 * Deletes the child at the given index
+		 *
+		 * @param index index to delete
+		 */
+		public void delete(int index) {
+			if (children.length == 1) {
+				children = NO_CHILDREN;
+				return;
+			}
+
+			Node[] shrunk = new Node[children.length - 1];
+			System.arraycopy(children, 0, shrunk, 0, index);
+			System.arraycopy(children, index + 1, shrunk, index, shrunk.length - index);
+			children = shrunk;
+		}
+
+		/**
+		 * Returns how many characters of the label match the text at the offset
+		 *
+		 * @param text   text to compare
+		 * @param offset offset in text to start comparing
+		 * @return number of matching characters
+		 */
+		public int match(String text, int offset) {
+			int matched = 0;
+			while (matched < label.length && offset + matched < text.length()
+					&& label[matched] == text.charAt(offset + matched)) {
+				matched++;
+			}
+			return matched;
+		}
+	}
+
+	/**
+	 * Depth-first iterator over the terms in sorted order
+	 *
+	 * @author Athene Marston
+	 *
+	 */
+	private class TermIterator implements Iterator<Entry<String, Integer>> {
+
+		/**
+		 * Nodes left to visit
+		 */
+		private final ArrayDeque<Node> nodes;
+
+		/**
+		 * Length of the term before each node's label, parallel to nodes
+		 */
+		private final ArrayDeque<Integer> depths;
+
+		/**
+		 * Characters on the path to the current node
+		 */
+		private final StringBuilder path;
+
+		/**
+		 * Next node with a term, null if none left
+		 */
+		private Node next;
+
+		/**
+		 * Initializes the iterator at the root
+		 */
+		public TermIterator() {
+			this.nodes = new ArrayDeque<>();
+			this.depths = new ArrayDeque<>();
+			this.path = new StringBuilder();
+
+			nodes.push(root);
+			depths.push(0);
+			advance();
+		}
+
+		/**
+		 * Moves to the next node with a term
+		 */
+		private void advance() {
+			next = null;
+
+			while (next == null && !nodes.isEmpty()) {
+				Node node = nodes.pop();
+				path.setLength(depths.pop());
+				path.append(node.label);
+
+				for (int i = node.children.length - 1; i >= 0; i--) { // reverse so smallest is popped first
+					nodes.push(node.children[i]);
+					depths.push(path.length());
+				}
+
+				if (node.id >= 0) {
+					next = node;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Entry<String, Integer> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			Entry<String, Integer> entry = Map.entry(path.toString(), next.id);
+			advance();
+			return entry;
+		}
+	}
+}
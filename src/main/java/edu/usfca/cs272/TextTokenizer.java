@@ -0,0 +1,380 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into the same cleaned words as {@link FileStemmer#clean(String)}
+ * and {@link FileStemmer#split(String)}, in a single pass without regular
+ * expressions. Each word is built in a reused buffer that is passed to a sink,
+ * so text made only of ASCII characters (the common case) is lowercased and
+ * split without creating any strings. Other text still needs to be normalized
+ * and lowercased as a whole, since both depend on the surrounding characters
+ * (such as combining marks and the Greek final sigma), but is then cleaned and
+ * split by hand.
+ *
+ * Text files are read without a {@link java.io.Reader}. The file is
+ * memory-mapped a window at a time, decoded from UTF-8 into a reusable
+ * character buffer, and split into lines the same way as
+ * {@link java.io.BufferedReader#readLine()}, and each line is tokenized.
+ *
+ * Warning: This class is not thread-safe, since its buffers are reused. Each
+ * thread should use its own tokenizer.
+ *
+ * @author Athene Marston
+ */
+public class TextTokenizer {
+
+	/**
+	 * Most bytes of a file that are mapped at once
+	 */
+	public static final int WINDOW_SIZE = 1 << 26;
+
+	/**
+	 * Number of characters decoded at a time
+	 */
+	private static final int CHUNK_SIZE = 1 << 14;
+
+	/**
+	 * Most bytes of a file this tokenizer maps at once
+	 */
+	private final int window;
+
+	/**
+	 * Decodes the mapped bytes, reporting malformed input like
+	 * {@link java.nio.file.Files#newBufferedReader(Path)} does
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Characters decoded from the current window
+	 */
+	private final CharBuffer chars;
+
+	/**
+	 * Characters of the line being read
+	 */
+	private char[] line;
+
+	/**
+	 * Number of characters in the line being read
+	 */
+	private int length;
+
+	/**
+	 * True while every character in the line being read is ASCII
+	 */
+	private boolean ascii;
+
+	/**
+	 * Cleaned word passed to the sink
+	 */
+	private final StringBuilder word;
+
+	/**
+	 * Text with everything but letters and whitespace removed, for text that is
+	 * not only ASCII
+	 */
+	private final StringBuilder cleaned;
+
+	/**
+	 * True if uppercase ASCII letters lowercase to the ASCII letters, which is
+	 * false in a few locales (such as Turkish)
+	 */
+	private final boolean asciiLowercase;
+
+	/**
+	 * Initializes a tokenizer
+	 */
+	public TextTokenizer() {
+		this(WINDOW_SIZE);
+	}
+
+	/**
+	 * Initializes a tokenizer that maps files a smaller window at a time, so
+	 * tests can cross window boundaries with small files
+	 *
+	 * @param window most bytes of a file to map at once; should be at least 4,
+	 *               the longest UTF-8 character
+	 */
+	TextTokenizer(int window) {
+		this.window = window;
+		this.decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		this.chars = CharBuffer.allocate(CHUNK_SIZE);
+		this.line = new char[256];
+		this.length = 0;
+		this.ascii = true;
+		this.word = new StringBuilder(64);
+		this.cleaned = new StringBuilder();
+		this.asciiLowercase = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+	}
+
+	/**
+	 * Reads a UTF-8 text file and passes every cleaned word to the sink, in order.
+	 * The word passed to the sink is reused, so it is only valid until the sink
+	 * returns.
+	 *
+	 * @param input the input file to read
+	 * @param sink  action to perform on every cleaned word
+	 * @throws IOException if unable to read or decode the file
+	 */
+	public void tokenize(Path input, Consumer<CharSequence> sink) throws IOException {
+		reset();
+
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			boolean last;
+
+			do { // map a window at a time, so files larger than a buffer can be read
+				long mapped = Math.min(size - position, window);
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+				last = position + mapped == size;
+				decode(bytes, last, sink);
+				position += bytes.position(); // a character split by the window is decoded from the next one
+			} while (!last);
+
+			finish(sink); // last line may not end with a line break
+		}
+	}
+
+	/**
+	 * Decodes UTF-8 text and passes every cleaned word to the sink, in order. The
+	 * text may be part of a larger file, as long as it starts and ends at a line
+	 * break (or the start or end of the file).
+	 *
+	 * @param bytes the bytes to decode, which are all read
+	 * @param sink  action to perform on every cleaned word
+	 * @throws IOException if unable to decode the text
+	 */
+	public void tokenize(ByteBuffer bytes, Consumer<CharSequence> sink) throws IOException {
+		reset();
+		decode(bytes, true, sink);
+		finish(sink);
+	}
+
+	/**
+	 * Clears the decoder and any line left from earlier text
+	 */
+	private void reset() {
+		decoder.reset();
+		chars.clear();
+		length = 0;
+		ascii = true;
+	}
+
+	/**
+	 * Decodes as much of the bytes as possible, passing the words of every line
+	 * that ends in them to the sink
+	 *
+	 * @param bytes the bytes to decode
+	 * @param last  true if no bytes follow these, else false
+	 * @param sink  action to perform on every cleaned word
+	 * @throws IOException if unable to decode the bytes
+	 */
+	private void decode(ByteBuffer bytes, boolean last, Consumer<CharSequence> sink) throws IOException {
+		CoderResult result;
+		do {
+			result = decoder.decode(bytes, chars, last);
+			if (result.isError()) {
+				result.throwException();
+			}
+			scan(sink);
+		} while (result.isOverflow());
+
+		if (last) {
+			decoder.flush(chars);
+			scan(sink);
+		}
+	}
+
+	/**
+	 * Splits the decoded characters into lines, passing the words of every line
+	 * that ends in them to the sink. A line still being read is kept for the next
+	 * chunk.
+	 *
+	 * @param sink action to perform on every cleaned word
+	 */
+	private void scan(Consumer<CharSequence> sink) {
+		chars.flip();
+		char[] array = chars.array();
+		int end = chars.limit();
+
+		for (int i = chars.position(); i < end; i++) {
+			char c = array[i];
+			if (c == '\n' || c == '\r') { // same line breaks as BufferedReader.readLine()
+				finish(sink);
+			} else {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = c;
+				ascii &= c < 0x80;
+			}
+		}
+		chars.clear();
+	}
+
+	/**
+	 * Cleans and splits the line that was read, passing its words to the sink
+	 *
+	 * @param sink action to perform on every cleaned word
+	 */
+	private void finish(Consumer<CharSequence> sink) {
+		if (length > 0) {
+			tokenize(CharBuffer.wrap(line, 0, length), ascii, sink);
+			length = 0;
+			ascii = true;
+		}
+	}
+
+	/**
+	 * Cleans and splits text, passing every cleaned word to the sink in order. The
+	 * word passed to the sink is reused, so it is only valid until the sink
+	 * returns.
+	 *
+	 * @param text the text to clean and split
+	 * @param sink action to perform on every cleaned word
+	 *
+	 * @see FileStemmer#parse(String)
+	 */
+	public void tokenize(CharSequence text, Consumer<CharSequence> sink) {
+		boolean ascii = true;
+		for (int i = 0; ascii && i < text.length(); i++) {
+			ascii = text.charAt(i) < 0x80;
+		}
+		tokenize(text, ascii, sink);
+	}
+
+	/**
+	 * Cleans and splits text, passing every cleaned word to the sink in order
+	 *
+	 * @param text  the text to clean and split
+	 * @param ascii true if every character of the text is ASCII
+	 * @param sink  action to perform on every cleaned word
+	 */
+	private void tokenize(CharSequence text, boolean ascii, Consumer<CharSequence> sink) {
+		if (!ascii || !asciiLowercase) {
+			String lowered = clean(text);
+			split(lowered, 0, lowered.length(), sink);
+			return;
+		}
+
+		// every ascii whitespace character is stripped by String.strip(), so only
+		// words need to be passed on
+		word.setLength(0);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 'a' && c <= 'z') {
+				word.append(c);
+			} else if (c >= 'A' && c <= 'Z') {
+				word.append((char) (c + ('a' - 'A')));
+			} else if (isSpace(c) && word.length() > 0) {
+				sink.accept(word);
+				word.setLength(0);
+			}
+		}
+		if (word.length() > 0) {
+			sink.accept(word);
+		}
+	}
+
+	/**
+	 * Normalizes text, removes everything but letters and whitespace, and
+	 * lowercases what is left
+	 *
+	 * @param text the text to clean
+	 * @return the cleaned text
+	 *
+	 * @see FileStemmer#clean(String)
+	 */
+	private String clean(CharSequence text) {
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+
+		cleaned.setLength(0);
+		for (int i = 0; i < normalized.length();) {
+			int c = normalized.codePointAt(i);
+			if (Character.isAlphabetic(c) || isSpace(c)) {
+				cleaned.appendCodePoint(c);
+			}
+			i += Character.charCount(c);
+		}
+		return cleaned.toString().toLowerCase();
+	}
+
+	/**
+	 * Splits cleaned text by whitespace after stripping it, passing every word to
+	 * the sink. Like {@link String#split(String)}, whitespace at the start that
+	 * {@link String#strip()} does not remove (such as a non-breaking space) gives
+	 * an empty first word, unless there are no other words.
+	 *
+	 * @param text  the cleaned text
+	 * @param start index of the first character to split
+	 * @param end   index after the last character to split
+	 * @param sink  action to perform on every word
+	 *
+	 * @see FileStemmer#split(String)
+	 */
+	private void split(String text, int start, int end, Consumer<CharSequence> sink) {
+		while (start < end && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+
+		boolean leading = start < end && isSpace(text.charAt(start));
+		int i = start;
+		while (i < end) {
+			if (isSpace(text.charAt(i))) {
+				i++;
+				continue;
+			}
+
+			int first = i;
+			while (i < end && !isSpace(text.charAt(i))) {
+				i++;
+			}
+
+			if (leading) {
+				sink.accept("");
+				leading = false;
+			}
+			word.setLength(0);
+			word.append(text, first, i);
+			sink.accept(word);
+		}
+	}
+
+	/**
+	 * Checks if a character is whitespace, using the same definition as
+	 * {@link FileStemmer#SPLIT_REGEX}
+	 *
+	 * @param c character (code point) to check
+	 * @return true if the character is whitespace, else false
+	 */
+	public static boolean isSpace(int c) {
+		if (c < 0x80) {
+			return c == ' ' || (c >= '\t' && c <= '\r');
+		}
+
+		return switch (Character.getType(c)) {
+			case Character.SPACE_SEPARATOR, Character.LINE_SEPARATOR, Character.PARAGRAPH_SEPARATOR -> true;
+			default -> c == 0x85;
+		};
+	}
+}
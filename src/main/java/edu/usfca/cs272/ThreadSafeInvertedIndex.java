@@ -4,24 +4,60 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 /**
  * Thread save version of InvertedIndex
  * 
+ * Word stems are split by hash into stripes, each guarded by its own lock, and
+ * the locations, word counts, and page information are guarded by the main
+ * lock. Reads take the main read lock and then the read locks of only the
+ * stripes they need, in stripe order. Merging another index holds the main
+ * write lock just long enough to add its locations, then locks one stripe at a
+ * time, so merges from different workers overlap and readers of other stripes
+ * are not blocked.
+ * 
+ * In snapshot mode, writes still go to the underlying index under the write
+ * lock, but reads never lock. Instead they use the last immutable copy of the
+ * index published with {@link #publish()}, so changes are only visible to
+ * readers once they are published. Each publish copies the whole index, so
+ * the heap holds two copies of it, and snapshot mode is off unless asked for.
+ * 
  * @author Athene Marston
  *
  */
 public class ThreadSafeInvertedIndex extends InvertedIndex {
 	
+	/**
+	 * Default number of stripes the word stems are split into
+	 */
+	public static final int DEFAULT_STRIPES = 16;
+
 	/** The lock used to protect concurrent access to the underlying index. */
 	private final MultiReaderLock lock;
 
+	/**
+	 * The locks used to protect concurrent access to each stripe of word stems
+	 */
+	private final MultiReaderLock[] stripeLocks;
+
+	/**
+	 * Every stripe index, for operations that lock all stripes
+	 */
+	private final int[] allStripes;
+
+	/**
+	 * Held while purging, so only one purge runs at a time
+	 */
+	private final Object purgeLock;
+
 	/**
 	 * Map from url in the index to a page snippet
 	 */
@@ -32,14 +68,81 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	private final Map<String, String[]> HTMLStatistics;
 
+	/**
+	 * Last published copy of the index that reads use, null if not in snapshot
+	 * mode
+	 */
+	private volatile Snapshot snapshot;
+
+	/**
+	 * True if the index was written to since the last published copy, only set
+	 * while holding a write lock
+	 */
+	private volatile boolean changed;
+
 	/**
 	 * Initializes index
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
+		this(false);
+	}
+
+	/**
+	 * Initializes index, optionally in snapshot mode where reads only see the
+	 * last published copy of the index (initially empty)
+	 * 
+	 * @param snapshots true to use snapshot mode, else false
+	 */
+	public ThreadSafeInvertedIndex(boolean snapshots) {
+		this(snapshots, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Initializes index with the given number of stripes, optionally in snapshot
+	 * mode
+	 * 
+	 * @param snapshots true to use snapshot mode, else false
+	 * @param stripes   number of stripes to split word stems into
+	 */
+	public ThreadSafeInvertedIndex(boolean snapshots, int stripes) {
+		super(stripes);
 		lock = new MultiReaderLock();
+		stripeLocks = new MultiReaderLock[stripes];
+		allStripes = new int[stripes];
+		for (int i = 0; i < stripes; i++) {
+			stripeLocks[i] = new MultiReaderLock();
+			allStripes[i] = i;
+		}
+		purgeLock = new Object();
 		HTMLSnippet = new HashMap<>();
 		HTMLStatistics = new HashMap<>();
+		snapshot = snapshots ? new Snapshot(new InvertedIndex(), Map.of(), Map.of()) : null;
+		changed = false;
+	}
+
+	/**
+	 * Publishes a copy of the current index for reads to use, if in snapshot
+	 * mode. Builders should call this once they finish adding to the index.
+	 * 
+	 * Each publish is a full deep copy of the index (not copy-on-write), so it
+	 * costs time and memory in proportion to the whole index. Publishing again
+	 * without any writes in between is skipped.
+	 */
+	public void publish() {
+		if (snapshot == null || !changed) {
+			return;
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
+		try { // only reads the index, so writers are held off but readers are not
+			changed = false;
+			snapshot = new Snapshot(new InvertedIndex(this),
+					Collections.unmodifiableMap(new HashMap<>(HTMLSnippet)),
+					Collections.unmodifiableMap(new HashMap<>(HTMLStatistics)));
+		} finally {
+			readUnlock(locked);
+		}
 	}
 
 	/**
@@ -51,6 +154,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	public void addHTMLStatistics(String url, String[] stats) {
 		lock.writeLock().lock();
 		try {
+			changed = true;
 			HTMLStatistics.put(url, stats);
 		} finally {
 			lock.writeLock().unlock();
@@ -64,6 +168,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @return an array of the statistics in the form {title, length, time}
 	 */
 	public String[] getHTMLStatistics(String url) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.statistics.get(url);
+		}
+
 		lock.readLock().lock();
 		try {
 			return HTMLStatistics.get(url);
@@ -78,6 +187,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @return unmodifiable view of the HTMLStatistics map
 	 */
 	public Map<String, String[]> getHTMLStatisticsMap() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.statistics;
+		}
+
 		lock.readLock().lock();
 		try {
 			return Collections.unmodifiableMap(HTMLStatistics);
@@ -95,6 +209,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	public void addHTMLSnippet(String url, String snippet) {
 		lock.writeLock().lock();
 		try {
+			changed = true;
 			HTMLSnippet.put(url, snippet);
 		} finally {
 			lock.writeLock().unlock();
@@ -108,6 +223,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @return the String[title, content length, page snippet], null if DNE
 	 */
 	public String getHTMLSnippet(String url) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.snippets.get(url);
+		}
+
 		lock.readLock().lock();
 		try {
 			return HTMLSnippet.get(url);
@@ -122,6 +242,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @return unmodifiable view of the HTMLInfo map
 	 */
 	public Map<String, String> getHTMLSnippetMap() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.snippets;
+		}
+
 		lock.readLock().lock();
 		try {
 			return Collections.unmodifiableMap(HTMLSnippet);
@@ -130,38 +255,332 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Returns a deep copy of the index, made while holding the read locks
+	 * 
+	 * @return copy of the index
+	 */
+	protected InvertedIndex copy() {
+		readLock(allStripes);
+		try {
+			return new InvertedIndex(this);
+		} finally {
+			readUnlock(allStripes);
+		}
+	}
+
+	/**
+	 * Returns the statistics of a url as last added, even if not yet published
+	 *
+	 * @param url to get statistics for
+	 * @return an array of the statistics in the form {title, length, time}
+	 */
+	protected String[] currentHTMLStatistics(String url) {
+		lock.readLock().lock();
+		try {
+			return HTMLStatistics.get(url);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a copy of the statistics of every url as last added, even if not
+	 * yet published
+	 *
+	 * @return copy of the HTMLStatistics map
+	 */
+	protected Map<String, String[]> copyHTMLStatistics() {
+		lock.readLock().lock();
+		try {
+			return new HashMap<>(HTMLStatistics);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a copy of the snippet of every url as last added, even if not yet
+	 * published
+	 *
+	 * @return copy of the HTMLSnippet map
+	 */
+	protected Map<String, String> copyHTMLSnippets() {
+		lock.readLock().lock();
+		try {
+			return new HashMap<>(HTMLSnippet);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the stripe of a word stem
+	 * 
+	 * @param word word stem
+	 * @return array with the index of the stripe
+	 */
+	private int[] stripesOf(String word) {
+		return new int[] { stripeOf(word) };
+	}
+
+	/**
+	 * Returns the stripes of the word stems in sorted order, without duplicates
+	 * 
+	 * @param words word stems
+	 * @return sorted array of stripe indexes
+	 */
+	private int[] stripesOf(Collection<String> words) {
+		boolean[] used = new boolean[stripeLocks.length];
+		int count = 0;
+		for (String word : words) {
+			int stripe = stripeOf(word);
+			if (!used[stripe]) {
+				used[stripe] = true;
+				count++;
+			}
+		}
+
+		int[] stripes = new int[count];
+		for (int i = 0, j = 0; i < used.length; i++) {
+			if (used[i]) {
+				stripes[j++] = i;
+			}
+		}
+		return stripes;
+	}
+
+	/**
+	 * Acquires the main read lock and then the read locks of the stripes
+	 * 
+	 * @param stripes sorted stripe indexes
+	 */
+	private void readLock(int[] stripes) {
+		lock.readLock().lock();
+		for (int stripe : stripes) {
+			stripeLocks[stripe].readLock().lock();
+		}
+	}
+
+	/**
+	 * Releases the read locks of the stripes and then the main read lock
+	 * 
+	 * @param stripes sorted stripe indexes
+	 */
+	private void readUnlock(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			stripeLocks[stripes[i]].readLock().unlock();
+		}
+		lock.readLock().unlock();
+	}
+
+	/**
+	 * Acquires the main write lock and then the write locks of the stripes
+	 * 
+	 * @param stripes sorted stripe indexes
+	 */
+	private void writeLock(int[] stripes) {
+		lock.writeLock().lock();
+		for (int stripe : stripes) {
+			stripeLocks[stripe].writeLock().lock();
+		}
+	}
+
+	/**
+	 * Releases the write locks of the stripes and then the main write lock
+	 * 
+	 * @param stripes sorted stripe indexes
+	 */
+	private void writeUnlock(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			stripeLocks[stripes[i]].writeLock().unlock();
+		}
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Acquires the main write lock and the write locks of every stripe, so a
+	 * caller can add to the index through the protected methods of
+	 * {@link InvertedIndex} in one step (see {@link IndexFile}). Must be followed
+	 * by {@link #unlockAll()}.
+	 */
+	protected void lockAll() {
+		writeLock(allStripes);
+		changed = true;
+	}
+
+	/**
+	 * Releases the locks acquired by {@link #lockAll()}
+	 */
+	protected void unlockAll() {
+		writeUnlock(allStripes);
+	}
+
 	@Override
 	public boolean addInvertedIndex(String word, String location, Integer position) {
-		lock.writeLock().lock();
+		int[] locked = stripesOf(word);
+		writeLock(locked);
 		try {
+			changed = true;
 			return super.addInvertedIndex(word, location, position);
 		} finally {
-			lock.writeLock().unlock();
+			writeUnlock(locked);
 		}
 	}
 
 	@Override
 	public boolean addAll(List<String> words, String location) {
-		lock.writeLock().lock();
+		int[] locked = allStripes;
+		writeLock(locked);
 		try {
+			changed = true;
 			return super.addAll(words, location);
 		} finally {
-			lock.writeLock().unlock();
+			writeUnlock(locked);
+		}
+	}
+
+	@Override
+	public boolean addPositions(String location, Map<String, PositionList> positions) {
+		int[] locked = stripesOf(positions.keySet());
+		writeLock(locked);
+		try {
+			changed = true;
+			return super.addPositions(location, positions);
+		} finally {
+			writeUnlock(locked);
 		}
 	}
 
 	@Override
 	public void addAll(InvertedIndex other) {
+		int[] remap;
 		lock.writeLock().lock();
-		try {
-			super.addAll(other);
+		try { // locations first, so readers can resolve every id they find in a stripe
+			changed = true;
+			remap = addLocations(other);
 		} finally {
 			lock.writeLock().unlock();
 		}
+
+		ArrayList<ArrayList<Entry<String, PostingList>>> grouped = new ArrayList<>(stripeLocks.length);
+		for (int i = 0; i < stripeLocks.length; i++) {
+			grouped.add(new ArrayList<>());
+		}
+
+		var iterator = other.postings();
+		while (iterator.hasNext()) {
+			var entry = iterator.next();
+			grouped.get(stripeOf(entry.getKey())).add(entry);
+		}
+
+		for (int i = 0; i < stripeLocks.length; i++) { // only one stripe is locked at a time
+			if (grouped.get(i).isEmpty()) {
+				continue;
+			}
+
+			stripeLocks[i].writeLock().lock();
+			try { // a publish since the locations were added has not copied these postings
+				changed = true;
+				for (var entry : grouped.get(i)) {
+					addPostings(entry.getKey(), entry.getValue(), remap);
+				}
+			} finally {
+				stripeLocks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean removeLocation(String location) {
+		boolean purge;
+		lock.writeLock().lock();
+		try { // only the document table changes, the stripes are purged later
+			if (!removeDocument(location)) {
+				return false;
+			}
+			changed = true;
+			purge = needsPurge();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (purge) {
+			purge();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean replaceLocation(String location, List<String> words) {
+		int[] locked = allStripes;
+		writeLock(locked);
+		try { // readers never see the location missing
+			changed = true;
+			return super.replaceLocation(location, words);
+		} finally {
+			writeUnlock(locked);
+		}
+	}
+
+	/**
+	 * Removes the removed documents from every posting list. Only one stripe is
+	 * write locked at a time, so reads of the other stripes can continue, and
+	 * only one purge runs at a time.
+	 */
+	@Override
+	public void purge() {
+		synchronized (purgeLock) {
+			BitSet purged;
+			lock.readLock().lock();
+			try { // holds off removals, so every stripe is purged of the same documents
+				purged = tombstoned();
+				for (int i = 0; i < stripeLocks.length; i++) {
+					stripeLocks[i].writeLock().lock();
+					try {
+						purgeStripe(i);
+					} finally {
+						stripeLocks[i].writeLock().unlock();
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			lock.writeLock().lock();
+			try { // only the documents purged above, later removals still need a purge
+				clearTombstones(purged);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks if a location is in the index as last added, even if not yet
+	 * published. Checks made before writing to the index should use this instead
+	 * of {@link #countsContains(String)}, which only sees the published copy in
+	 * snapshot mode.
+	 *
+	 * @param location file path or url
+	 * @return true if the location is in the index, else false
+	 */
+	protected boolean currentCountsContains(String location) {
+		lock.readLock().lock();
+		try {
+			return containsLocation(location);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	@Override
 	public boolean countsContains(String location) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.countsContains(location);
+		}
+
 		lock.readLock().lock();
 		try {
 			return super.countsContains(location);
@@ -172,36 +591,60 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public boolean indexContains(String word) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.indexContains(word);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.indexContains(word);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public boolean indexContains(String word, String location) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.indexContains(word, location);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.indexContains(word, location);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public boolean indexContains(String word, String location, int position) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.indexContains(word, location, position);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.indexContains(word, location, position);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public void outputCounts(Path location) throws IOException {
+		Snapshot current = snapshot;
+		if (current != null) {
+			current.index.outputCounts(location);
+			return;
+		}
+
 		lock.readLock().lock();
 		try {
 			super.outputCounts(location);
@@ -212,56 +655,93 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public void outputIndex(Path location) throws IOException {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			current.index.outputIndex(location);
+			return;
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
 			super.outputIndex(location);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public void outputIndex(Writer writer) throws IOException {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			current.index.outputIndex(writer);
+			return;
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
 			super.outputIndex(writer);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Integer size() {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.size();
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
 			return super.size();
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int size(String word) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.size(word);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.size(word);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int size(String word, String location) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.size(word, location);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.size(word, location);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int countsSize() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.countsSize();
+		}
+
 		lock.readLock().lock();
 		try {
 			return super.countsSize();
@@ -272,6 +752,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public int getWordCount(String location) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getWordCount(location);
+		}
+
 		lock.readLock().lock();
 		try {
 			return super.getWordCount(location);
@@ -282,16 +767,27 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public Collection<String> getWords() {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getWords();
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
 			return super.getWords();
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Collection<String> getLocations() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getLocations();
+		}
+
 		lock.readLock().lock();
 		try {
 			return super.getLocations();
@@ -302,6 +798,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public Map<String, Integer> getCounts() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getCounts();
+		}
+
 		lock.readLock().lock();
 		try {
 			return super.getCounts();
@@ -312,52 +813,118 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public Collection<String> getLocations(String word) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getLocations(word);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.getLocations(word);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Collection<Integer> getPositions(String word, String location) {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.getPositions(word, location);
+		}
+
+		int[] locked = stripesOf(word);
+		readLock(locked);
 		try {
 			return super.getPositions(word, location);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.toString();
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
 			return super.toString();
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public ArrayList<FoundFile> exactSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public ArrayList<FoundFile> exactSearch(Set<String> queries, int limit) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.exactSearch(queries, limit);
+		}
+
+		int[] locked = stripesOf(queries);
+		readLock(locked);
 		try {
-			return super.exactSearch(queries);
+			return super.exactSearch(queries, limit);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public ArrayList<FoundFile> partialSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public ArrayList<FoundFile> partialSearch(Set<String> queries, int limit) {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current.index.partialSearch(queries, limit);
+		}
+
+		int[] locked = allStripes;
+		readLock(locked);
 		try {
-			return super.partialSearch(queries);
+			return super.partialSearch(queries, limit);
 		} finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
+	/**
+	 * Immutable copy of the index and page information published for reads
+	 * 
+	 * @author Athene Marston
+	 *
+	 */
+	private static class Snapshot {
+
+		/**
+		 * Copy of the index
+		 */
+		private final InvertedIndex index;
+
+		/**
+		 * Copy of the map from url to page snippet
+		 */
+		private final Map<String, String> snippets;
+
+		/**
+		 * Copy of the map from url to page statistics
+		 */
+		private final Map<String, String[]> statistics;
+
+		/**
+		 * Initializes a snapshot
+		 * 
+		 * @param index      copy of the index
+		 * @param snippets   copy of the page snippets
+		 * @param statistics copy of the page statistics
+		 */
+		public Snapshot(InvertedIndex index, Map<String, String> snippets, Map<String, String[]> statistics) {
+			this.index = index;
+			this.snippets = snippets;
+			this.statistics = statistics;
+		}
+	}
 }
@@ -1,13 +1,16 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
 * Class to build inverted index from urls' html content
@@ -16,6 +19,11 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
 *
 */
 public class WebCrawler {
+	/**
+	 * Number of html pages fetched by all crawlers
+	 */
+	private static final Metrics.Counter PAGES = Metrics.counter("crawl.pages");
+
 	/**
 	 * The inverted index of data to search
 	 */
@@ -37,6 +45,11 @@ public class WebCrawler {
 	 */
 	private final HashSet<URL> visited;
 	
+	/**
+	 * Log crawled pages are written to, null if pages are not logged
+	 */
+	private final CrawlLog log;
+	
 	/**
 	 * Web crawler constructor
 	 * 
@@ -45,10 +58,24 @@ public class WebCrawler {
 	 * @param maxCrawl the maximum number of links to crawls
 	 */
 	public WebCrawler(WorkQueue queue, ThreadSafeInvertedIndex index, int maxCrawl) {
+		this(queue, index, maxCrawl, null);
+	}
+	
+	/**
+	 * Web crawler constructor that logs crawled pages, and skips fetching pages
+	 * the log already replayed into the index
+	 * 
+	 * @param queue WorkQueue for this class
+	 * @param index ThreadSafeInvertedIndex for this class
+	 * @param maxCrawl the maximum number of links to crawls
+	 * @param log CrawlLog to write crawled pages to, may be null
+	 */
+	public WebCrawler(WorkQueue queue, ThreadSafeInvertedIndex index, int maxCrawl, CrawlLog log) {
 		this.index = index;
 		this.queue = queue;
 		this.crawls = maxCrawl -1;
 		this.visited = new HashSet<URL>(); 
+		this.log = log;
 	}
 	
 	/**
@@ -61,11 +88,49 @@ public class WebCrawler {
 	public void build(String seed) throws MalformedURLException, URISyntaxException {
 		URL url = LinkFinder.normalize(new URL(seed)); // start location
 		
-		visited.add(url); //if url not visited, add to visited...
-		CrawlTask task = new CrawlTask(url);	//new crawl task
-		queue.execute(task);
+		synchronized (visited) {
+			visited.add(url); //if url not visited, add to visited...
+			resume(url);
+		}
 		
 		queue.finish();
+		index.publish();
+	}
+
+	/**
+	 * Walks the pages already replayed from the log in crawl order, using their
+	 * logged links in place of fetching them, and starts crawl tasks for the
+	 * first pages that were not logged
+	 * 
+	 * @param seed initial crawl url, already visited
+	 * @throws MalformedURLException error reading a logged link
+	 */
+	private void resume(URL seed) throws MalformedURLException {
+		Map<String, List<String>> replayed = log != null ? log.replayed() : Map.of();
+		ArrayDeque<URL> frontier = new ArrayDeque<>();
+		frontier.add(seed);
+
+		while (!frontier.isEmpty()) {
+			URL url = frontier.poll();
+			List<String> links = replayed.get(url.toString());
+
+			if (links == null) { // not logged yet
+				queue.execute(new CrawlTask(url));
+				continue;
+			}
+
+			for (String link : links) { // same order and limit as a crawl task
+				if (crawls <= 0) {
+					break;
+				}
+				URL found = new URL(link);
+				if (!visited.contains(found)) {
+					visited.add(found);
+					crawls--;
+					frontier.add(found);
+				}
+			}
+		}
 	}
 
 	/**
@@ -77,21 +142,17 @@ public class WebCrawler {
 	 * @return true if html content added to index, else false
 	 */
 	public static boolean addHtml(String html, InvertedIndex local, URL url) {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
-		int i = 1;
-		String[] htmlLines = FileStemmer.parse(html);
-		
-		boolean added = true;
+		Stemmer stemmer = StemCache.english();
+		HashMap<String, PositionList> positions = new HashMap<>();
+		int[] position = { 1 };
 
-		for (String line : htmlLines) { // for every word, stem + add to index
-			String stem = stemmer.stem(line).toString();
-			if (local.addInvertedIndex(stem, url.toString(), i) == false) {
-				added = false;
-			}
-			i++;
-		}
-		
-		return (added && i>1);	//if no lines in html (not added)
+		FileStemmer.parse(html, word -> { // for every word, stem + collect its position
+			String stem = stemmer.stem(word).toString();
+			positions.computeIfAbsent(stem, s -> new PositionList()).add(position[0]++);
+		});
+
+		boolean added = local.addPositions(url.toString(), positions);
+		return (added && position[0] > 1);	//if no lines in html (not added)
 	}
 	
 	/**
@@ -101,8 +162,9 @@ public class WebCrawler {
 	 * @param snippetLength length of snippet to return 
 	 * @param url location
 	 * @param index ThreadSafeInvertedIndex to add snippet info to 
+	 * @return the snippet that was added
 	 */
-	public static void addPageSnippet(String html, int snippetLength, URL url, ThreadSafeInvertedIndex index) {
+	public static String addPageSnippet(String html, int snippetLength, URL url, ThreadSafeInvertedIndex index) {
 		String snippet = html.replaceAll("\\s+", " ");
 		
 		if(snippet == null || snippet.isBlank()) {	//if null, no content found
@@ -112,7 +174,7 @@ public class WebCrawler {
 			snippet = snippet.substring(0, snippetLength - 3) + "...";
         }
 		index.addHTMLSnippet(url.toString(), snippet);
-    
+		return snippet;
 	}
 	
 	/**
@@ -146,10 +208,12 @@ public class WebCrawler {
 		@Override
 		public void run() {
 			String html = HtmlFetcher.fetch(url, 3, index);
+			ArrayList<URL> foundUrls = null;
+			String snippet = null;
 
 			if (html != null) { // if valid html
 				html = HtmlCleaner.stripBlockElements(html); // strip block elms and get found urls
-				ArrayList<URL> foundUrls = LinkFinder.listUrls(url, html);
+				foundUrls = LinkFinder.listUrls(url, html);
 
 				if (foundUrls != null) {
 					synchronized (visited) {
@@ -169,13 +233,31 @@ public class WebCrawler {
 				}
 
 				html = HtmlCleaner.stripEntities(HtmlCleaner.stripTags(html)); // finish clean
+				PAGES.increment();
 				if (addHtml(html, local, url)) { // process this url
-					addPageSnippet(html, 50, url, index); // add snippet of 50 chars
+					snippet = addPageSnippet(html, 50, url, index); // add snippet of 50 chars
 				}
 				
 			}
 
+			byte[] record = null;
+			if (log != null && html != null) { // encoded first, since adding may share the local position lists
+				try {
+					record = CrawlLog.encode(url, foundUrls, index.currentHTMLStatistics(url.toString()), snippet, local);
+				} catch (IOException e) {
+					System.out.printf("Error logging page: %s%n", url.toString());
+				}
+			}
+
 			index.addAll(local);
+
+			if (record != null) { // logged after adding, so a checkpoint never misses a logged page
+				try {
+					log.append(record);
+				} catch (IOException e) {
+					System.out.printf("Error logging page: %s%n", url.toString());
+				}
+			}
 		}
 
 		@Override
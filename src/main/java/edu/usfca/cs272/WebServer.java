@@ -65,6 +65,7 @@ public class WebServer {
 		servletContext.addServlet(new ServletHolder(mainServlet.new DownloadServlet()), "/download");
 		servletContext.addServlet(new ServletHolder(mainServlet.new LocationsServlet()), "/locations");
 		servletContext.addServlet(new ServletHolder(mainServlet.new IndexServlet()), "/index");
+		servletContext.addServlet(new ServletHolder(mainServlet.new MetricsServlet()), "/metrics");
 
 		HandlerList handlers = new HandlerList();
 		handlers.addHandler(resourceContext);
@@ -289,6 +289,38 @@ public class WebServlet extends HttpServlet {
         }
 	}
 	
+	/**
+	 * Servlet to return the current build, crawl, and search metrics as json
+	 * 
+	 * @author Athene Marston
+	 *
+	 */
+	public class MetricsServlet extends HttpServlet {
+		/** Class version for serialization, in [YEAR][TERM] format (unused). */
+		private static final long serialVersionUID = 202302;
+		
+		/**
+		 * Constructor for MetricsServlet
+		 */
+		public MetricsServlet() {
+			super();
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+			response.setHeader("Cache-Control", "no-store");	// always current
+
+			PrintWriter out = response.getWriter();
+			Metrics.writeJson(out);
+			out.flush();
+
+			response.setStatus(HttpServletResponse.SC_OK);
+		}
+	}
+	
 	/**
 	 * Servlet to display inverted index locations
 	 * 
@@ -1,6 +1,10 @@
 package edu.usfca.cs272;
 
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -11,6 +15,14 @@ import org.apache.logging.log4j.Logger;
  * Brian Goetz. It is up to the user of this class to keep track of whether
  * there is any pending work remaining.
  *
+ * <p>
+ * By default the workers share one queue of tasks. In stealing mode each worker
+ * has its own deque instead (see {@link ForkJoinPool}): tasks added by a worker
+ * go on that worker's deque, tasks added by other threads are spread across the
+ * deques, and a worker with nothing left to do steals the oldest task of
+ * another worker. Workers are woken one at a time as tasks arrive, so many
+ * short tasks do not all contend for one lock.
+ *
  * @see <a href=
  *      "https://web.archive.org/web/20210126172022/https://www.ibm.com/developerworks/library/j-jtp0730/index.html">
  *      Java Theory and Practice: Thread Pools and Work Queues</a>
@@ -19,11 +31,14 @@ import org.apache.logging.log4j.Logger;
  * @version Spring 2023
  */
 public class WorkQueue {
-	/** Workers that wait until work (or tasks) are available. */
+	/** Workers that wait until work (or tasks) are available, empty if stealing. */
 	private final Worker[] workers;
 
+	/** Workers with their own deques that steal work, or null if not stealing. */
+	private final ForkJoinPool pool;
+
 	/** Queue of pending work (or tasks). */
-	private final LinkedList<Runnable> tasks;
+	private final LinkedList<QueuedTask> tasks;
 
 	/** Used to signal the workers should terminate. */
 	private volatile boolean shutdown;
@@ -34,8 +49,14 @@ public class WorkQueue {
 	/** Logger used for this class. */
 	private static final Logger log = LogManager.getLogger();
 
+	/** Number of tasks run by all work queues. */
+	private static final Metrics.Counter TASKS = Metrics.counter("queue.tasks");
+
+	/** Time each task waits in a queue before a worker takes it. */
+	private static final Metrics.Histogram WAIT_TIME = Metrics.histogram("queue.wait");
+
 	/** The amount of pending (or unfinished) work. */
-	private int pending;
+	private final AtomicInteger pending;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -52,13 +73,29 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.tasks = new LinkedList<Runnable>();
-		this.workers = new Worker[threads];
+		this(threads, false);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads, optionally with a
+	 * deque per worker and work stealing.
+	 *
+	 * @param threads  number of worker threads; should be greater than 1
+	 * @param stealing true if each worker should have its own deque and steal
+	 *                 work from the others
+	 */
+	public WorkQueue(int threads, boolean stealing) {
+		this.tasks = new LinkedList<QueuedTask>();
+		this.workers = new Worker[stealing ? 0 : threads];
 		this.shutdown = false;
-		pending = 0;
+		pending = new AtomicInteger();
+
+		// async mode runs each deque first-in first-out like the shared queue
+		this.pool = stealing ? new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true)
+				: null;
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
+		for (int i = 0; i < workers.length; i++) {
 			workers[i] = new Worker();
 			workers[i].start();
 		}
@@ -72,8 +109,20 @@ public class WorkQueue {
 	 */
 	public void execute(Runnable task) {
 		incrementPending();
+
+		if (pool != null) {
+			try {
+				pool.execute(new QueuedTask(task));
+			} catch (RejectedExecutionException e) {
+				// shut down, so the task will never run or finish
+				decrementPending();
+				throw e;
+			}
+			return;
+		}
+
 		synchronized (tasks) {
-			tasks.addLast(task);
+			tasks.addLast(new QueuedTask(task));
 			tasks.notifyAll();
 		}
 	}
@@ -85,7 +134,7 @@ public class WorkQueue {
 	 */
 	public synchronized void finish() {
 		try {
-			while (pending > 0) {
+			while (pending.get() > 0) {
 				this.wait();
 			}
 
@@ -110,6 +159,10 @@ public class WorkQueue {
 			for (Worker worker : workers) {
 				worker.join();
 			}
+
+			if (pool != null) {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
 		} catch (InterruptedException e) {
 			System.err.println("Warning: Work queue interrupted while joining.");
 			log.catching(Level.WARN, e);
@@ -120,6 +173,7 @@ public class WorkQueue {
 	/**
 	 * Asks the queue to shutdown. Any unprocessed work (or tasks) will not be
 	 * finished, but threads in-progress will not be interrupted.
+	 * In stealing mode, work already on a worker's deque is still finished.
 	 */
 	public void shutdown() {
 		// safe to do unsynchronized due to volatile keyword
@@ -128,6 +182,10 @@ public class WorkQueue {
 		synchronized (tasks) {
 			tasks.notifyAll();
 		}
+
+		if (pool != null) {
+			pool.shutdown(); // tasks already on a deque still run, but nothing new is accepted
+		}
 	}
 
 	/**
@@ -136,26 +194,93 @@ public class WorkQueue {
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		return pool != null ? pool.getParallelism() : workers.length;
+	}
+
+	/**
+	 * Returns whether each worker has its own deque and steals work.
+	 *
+	 * @return true if stealing
+	 */
+	public boolean isStealing() {
+		return pool != null;
+	}
+
+	/**
+	 * Returns the number of tasks waiting for a worker, not counting the tasks
+	 * being run. Whoever owns the queue can report this as a gauge.
+	 *
+	 * @return number of waiting tasks
+	 */
+	public long waiting() {
+		if (pool != null) {
+			return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+		}
+
+		synchronized (tasks) {
+			return tasks.size();
+		}
 	}
 
 	/**
 	 * Safely increments the shared pending variable.
 	 */
-	private synchronized void incrementPending() {
-		pending++;
+	private void incrementPending() {
+		pending.incrementAndGet();
 	}
 
 	/**
 	 * Safely decrements the shared pending variable, and wakes up any threads
-	 * waiting for work to be completed.
+	 * waiting for work to be completed. Only the last task to finish takes the
+	 * lock.
 	 */
-	private synchronized void decrementPending() {
-		assert pending > 0;
-		pending--;
+	private void decrementPending() {
+		int remaining = pending.decrementAndGet();
+		assert remaining >= 0;
 
-		if (pending == 0) {
-			this.notifyAll();
+		if (remaining == 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * A task along with the time it was added to the queue. Running it runs the
+	 * task on the current worker and marks it finished.
+	 */
+	private class QueuedTask implements Runnable {
+		/** The task to run. */
+		private final Runnable task;
+
+		/** When the task was added, from {@link System#nanoTime()}. */
+		private final long queued;
+
+		/**
+		 * Initializes a task added to the queue now.
+		 *
+		 * @param task the task to run
+		 */
+		public QueuedTask(Runnable task) {
+			this.task = task;
+			this.queued = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			TASKS.increment();
+			WAIT_TIME.recordSince(queued);
+
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				// catch runtime exceptions to avoid leaking threads
+				System.err.printf("Error: %s encountered an exception while running.%n",
+						Thread.currentThread().getName());
+				log.catching(Level.ERROR, e);
+			} finally {
+				decrementPending();
+			}
 		}
 	}
 
@@ -178,7 +303,7 @@ public class WorkQueue {
 
 		@Override
 		public void run() {
-			Runnable task = null;
+			QueuedTask task = null;
 
 			try {
 				while (true) {
@@ -197,15 +322,7 @@ public class WorkQueue {
 						task = tasks.removeFirst();
 					}
 
-					try {
-						task.run();
-					} catch (RuntimeException e) {
-						// catch runtime exceptions to avoid leaking threads
-						System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
-						log.catching(Level.ERROR, e);
-					} finally {
-						decrementPending();
-					}
+					task.run();
 				}
 			} catch (InterruptedException e) {
 				// causes early termination of worker threads
@@ -0,0 +1,137 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.InvertedIndex.FoundFile;
+
+/**
+ * Checks that searches with a limit, which use MaxScore pruning, give exactly
+ * the first results of ranking every match, on random indexes with many tied
+ * scores, limits past the number of matches, and removed documents.
+ *
+ * @author Athene Marston
+ */
+public class MaxScoreTest {
+
+	/**
+	 * Seed of the random indexes, so failures can be reproduced
+	 */
+	private static final long SEED = 272;
+
+	/**
+	 * Words the documents are made of, sharing prefixes for partial search
+	 */
+	private static final String[] WORDS = {
+			"apple", "apply", "ape", "banana", "band", "bandana", "cat", "car", "cart", "dog", "door", "egg"
+	};
+
+	/**
+	 * Prefixes and words the queries are made of
+	 */
+	private static final String[] QUERIES = {
+			"a", "ap", "appl", "apple", "b", "band", "banana", "c", "ca", "car", "cat", "d", "do", "dog", "egg",
+			"fig"
+	};
+
+	/**
+	 * Returns a random set of query words
+	 *
+	 * @param random the random numbers to use
+	 * @return the query words
+	 */
+	private static Set<String> randomQuery(SplittableRandom random) {
+		HashSet<String> query = new HashSet<>();
+		for (int i = 1 + random.nextInt(4); i > 0; i--) {
+			query.add(QUERIES[random.nextInt(QUERIES.length)]);
+		}
+		return query;
+	}
+
+	/**
+	 * Returns the results as text, so lists of results can be compared
+	 *
+	 * @param results the search results
+	 * @return the path, count, and score of each result
+	 */
+	private static List<String> describe(List<FoundFile> results) {
+		ArrayList<String> described = new ArrayList<>();
+		for (FoundFile result : results) {
+			described.add(result.toString());
+		}
+		return described;
+	}
+
+	/**
+	 * Builds a random index. Documents only have a few different lengths and
+	 * few words, so many of them tie on score and count, and some paths only
+	 * differ by case. Some documents are removed, and some of those purged.
+	 *
+	 * @param random the random numbers to use
+	 * @param index  the index to add to
+	 */
+	private static void randomIndex(SplittableRandom random, InvertedIndex index) {
+		int documents = 1 + random.nextInt(120);
+		for (int doc = 0; doc < documents; doc++) {
+			ArrayList<String> words = new ArrayList<>();
+			for (int i = 1 + random.nextInt(3) * 4; i > 0; i--) {
+				words.add(WORDS[random.nextInt(random.nextBoolean() ? 4 : WORDS.length)]);
+			}
+			index.addAll(words, (random.nextBoolean() ? "Doc" : "doc") + random.nextInt(documents));
+		}
+
+		for (String location : List.copyOf(index.getLocations())) {
+			if (random.nextInt(4) == 0) {
+				index.removeLocation(location);
+			}
+		}
+		if (random.nextBoolean()) {
+			index.purge();
+		}
+		if (random.nextBoolean()) { // tombstones left behind
+			for (String location : List.copyOf(index.getLocations())) {
+				if (random.nextInt(4) == 0) {
+					index.removeLocation(location);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares searches with limits against ranking every match on random
+	 * indexes, for exact and partial search
+	 */
+	@Test
+	public void testLimitedSearch() {
+		SplittableRandom random = new SplittableRandom(SEED);
+
+		for (int round = 0; round < 300; round++) {
+			InvertedIndex index = round % 2 == 0 ? new InvertedIndex() : new ThreadSafeInvertedIndex();
+			randomIndex(random, index);
+			int size = index.getLocations().size();
+
+			for (int i = 0; i < 20; i++) {
+				Set<String> query = randomQuery(random);
+				boolean partial = random.nextBoolean();
+				List<String> all = describe(index.search(query, partial));
+
+				for (int limit : new int[] { 1, 2, 3, 5, 10, all.size(), all.size() + 1, size, size + 1 }) {
+					if (limit < 1) {
+						continue;
+					}
+					List<String> expected = all.subList(0, Math.min(limit, all.size()));
+					String message = "Round " + round + ", query " + query + (partial ? " partial" : "") + ", limit "
+							+ limit;
+					assertEquals(expected, describe(index.search(query, partial, limit)), message);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the trie against a sorted map while terms are added and removed at
+ * random, so edges are split, pruned, and merged again, and term ids are
+ * reused.
+ *
+ * @author Athene Marston
+ */
+public class TermDictionaryTest {
+
+	/**
+	 * Seed of the random terms, so failures can be reproduced
+	 */
+	private static final long SEED = 272;
+
+	/**
+	 * Returns a random term over a small alphabet, so terms share prefixes
+	 *
+	 * @param random the random numbers to use
+	 * @return the term
+	 */
+	private static String randomTerm(SplittableRandom random) {
+		StringBuilder term = new StringBuilder();
+		for (int i = random.nextInt(7); i > 0; i--) {
+			term.append("abc".charAt(random.nextInt(3)));
+		}
+		return term.toString();
+	}
+
+	/**
+	 * Checks every term, its id, and prefix lookups against the expected terms
+	 *
+	 * @param dictionary the dictionary to check
+	 * @param expected   expected terms and ids
+	 * @param random     the random numbers to use for prefixes
+	 */
+	private static void check(TermDictionary dictionary, TreeMap<String, Integer> expected,
+			SplittableRandom random) {
+		assertEquals(expected.size(), dictionary.size());
+		assertEquals(new ArrayList<>(expected.keySet()), dictionary.terms());
+
+		ArrayList<Map.Entry<String, Integer>> entries = new ArrayList<>();
+		dictionary.forEach(entries::add);
+		assertEquals(new ArrayList<>(expected.entrySet()), entries);
+
+		for (int i = 0; i < 5; i++) {
+			String prefix = randomTerm(random);
+			ArrayList<Integer> ids = new ArrayList<>();
+			for (var entry : expected.tailMap(prefix).entrySet()) {
+				if (!entry.getKey().startsWith(prefix)) {
+					break;
+				}
+				ids.add(entry.getValue());
+			}
+
+			ArrayList<Integer> found = new ArrayList<>();
+			dictionary.forEachPrefix(prefix, found::add);
+			assertEquals(ids, found, () -> "Prefix: " + prefix);
+		}
+	}
+
+	/**
+	 * Adds and removes random terms, checking the dictionary after each step and
+	 * that no more ids are used than terms were ever held at once
+	 */
+	@Test
+	public void testAddRemove() {
+		SplittableRandom random = new SplittableRandom(SEED);
+		TermDictionary dictionary = new TermDictionary();
+		TreeMap<String, Integer> expected = new TreeMap<>();
+		int most = 0;
+
+		for (int step = 0; step < 20_000; step++) {
+			String term = randomTerm(random);
+
+			if (random.nextInt(5) < 3) {
+				int id = dictionary.add(term);
+				Integer old = expected.putIfAbsent(term, id);
+				assertEquals(old == null ? id : old, id, () -> "Add: " + term);
+			} else {
+				Integer old = expected.remove(term);
+				assertEquals(old == null ? -1 : old, dictionary.remove(term), () -> "Remove: " + term);
+			}
+
+			most = Math.max(most, expected.size());
+			for (int id : expected.values()) {
+				assertTrue(id < most, "Term ids are reused");
+			}
+			assertEquals(expected.size(), new HashSet<>(expected.values()).size());
+
+			if (step % 50 == 0) {
+				check(dictionary, expected, random);
+			}
+		}
+		check(dictionary, expected, random);
+
+		for (String term : List.copyOf(expected.keySet())) { // empty again
+			assertEquals(expected.remove(term), dictionary.remove(term));
+		}
+		check(dictionary, expected, random);
+		assertEquals(-1, dictionary.get(""));
+	}
+}
@@ -0,0 +1,238 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the tokenizer gives exactly the same words as the original
+ * regular expression pipeline, {@code FileStemmer.split(FileStemmer.clean(text))}
+ * applied to each line, on random text mixing ASCII, digits, apostrophes,
+ * accented and non-Latin letters, combining marks, supplementary characters,
+ * and Unicode whitespace.
+ *
+ * @author Athene Marston
+ */
+public class TextTokenizerTest {
+
+	/**
+	 * Seed of the random text, so failures can be reproduced
+	 */
+	private static final long SEED = 272;
+
+	/**
+	 * Pieces the random text is built from
+	 */
+	private static final String[] PIECES = {
+			"hello", "World", "CAPS", "a", "don't", "rock'n'roll", "'quoted'", "o'clock", "ice-cream", "e-mail",
+			"2023", "42nd", "v1.0", "3.14", "x86_64", "#hashtag", "@user", "$5", "100%", "a&b",
+			".", ",", ";", ":", "!", "?", "-", "--", "(", ")", "\"", "[x]", "/", "\\", "_",
+			"café", "naïve", "résumé", "Ångström", "straße", "ÜBER", "İstanbul", "ǅemal", "ﬁne", "ǈ",
+			"αβγ", "Ωμέγα", "привет", "ПРИВЕТ", "日本語", "한국어", "עברית", "العربية", "हिन्दी",
+			"e\u0301", "n\u0303o", "\u0301", "\u200Bzero", "soft\u00ADhyphen",
+			"𝔸𝔹ℂ", "𐐀𐐨", "😀", "🇺🇸", "𝐀bold",
+			" ", " ", " ", "  ", "\t", "\u000B", "\f", "\u00A0", "\u2003", "\u3000", "\u2028", "\u2029",
+			"\u0085", "\u1680", "\u202F", "\u205F", "\u200A", "\u180E",
+			"\n", "\r\n", "\r", "\n\n", "\r\r\n"
+	};
+
+	/**
+	 * Returns random text made of the pieces
+	 *
+	 * @param random the random numbers to use
+	 * @param pieces number of pieces
+	 * @return the text
+	 */
+	private static String randomText(SplittableRandom random, int pieces) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < pieces; i++) {
+			text.append(PIECES[random.nextInt(PIECES.length)]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the words of text using the original regular expressions
+	 *
+	 * @param text the text to clean and split
+	 * @return the words
+	 */
+	private static List<String> expected(String text) {
+		return Arrays.asList(FileStemmer.split(FileStemmer.clean(text)));
+	}
+
+	/**
+	 * Returns the words of a file using the original regular expressions on
+	 * each line, the way files were read before the tokenizer
+	 *
+	 * @param file the file to read
+	 * @return the words
+	 * @throws IOException if an IO error occurs
+	 */
+	private static List<String> expected(Path file) throws IOException {
+		ArrayList<String> words = new ArrayList<>();
+		for (String line : Files.readAllLines(file, UTF_8)) {
+			words.addAll(expected(line));
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the words of text using the tokenizer
+	 *
+	 * @param text the text to clean and split
+	 * @return the words
+	 */
+	private static List<String> actual(CharSequence text) {
+		ArrayList<String> words = new ArrayList<>();
+		FileStemmer.parse(text, word -> words.add(word.toString()));
+		return words;
+	}
+
+	/**
+	 * Returns the words of a file using the tokenizer
+	 *
+	 * @param tokenizer the tokenizer to use
+	 * @param file      the file to read
+	 * @return the words
+	 * @throws IOException if an IO error occurs
+	 */
+	private static List<String> actual(TextTokenizer tokenizer, Path file) throws IOException {
+		ArrayList<String> words = new ArrayList<>();
+		tokenizer.tokenize(file, word -> words.add(word.toString()));
+		return words;
+	}
+
+	/**
+	 * Tests short single lines, including text with no words
+	 */
+	@Test
+	public void testLines() {
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int i = 0; i < 20_000; i++) {
+			String text = randomText(random, random.nextInt(12)).replaceAll("[\\n\\r]", " ");
+			assertEquals(expected(text), actual(text), () -> "Text: " + escape(text));
+			assertEquals(expected(text), Arrays.asList(FileStemmer.parse(text)), () -> "Text: " + escape(text));
+		}
+	}
+
+	/**
+	 * Tests text that is only ASCII, which takes the fast path
+	 */
+	@Test
+	public void testAscii() {
+		SplittableRandom random = new SplittableRandom(SEED + 1);
+		for (int i = 0; i < 20_000; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int j = random.nextInt(40); j > 0; j--) {
+				text.append((char) random.nextInt(0x80));
+			}
+			String line = text.toString().replaceAll("[\\n\\r]", " ");
+			assertEquals(expected(line), actual(line), () -> "Text: " + escape(line));
+		}
+	}
+
+	/**
+	 * Tests decoding whole texts of many lines from bytes
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testBytes() throws IOException {
+		SplittableRandom random = new SplittableRandom(SEED + 2);
+		TextTokenizer tokenizer = new TextTokenizer();
+		for (int i = 0; i < 2_000; i++) {
+			String text = randomText(random, random.nextInt(200));
+			ArrayList<String> words = new ArrayList<>();
+			tokenizer.tokenize(ByteBuffer.wrap(text.getBytes(UTF_8)), word -> words.add(word.toString()));
+
+			ArrayList<String> lines = new ArrayList<>();
+			for (String line : text.split("\\r\\n|\\r|\\n")) {
+				lines.addAll(expected(line));
+			}
+			assertEquals(lines, words, () -> "Text: " + escape(text));
+		}
+	}
+
+	/**
+	 * Tests reading files mapped a small window at a time, so lines, line breaks,
+	 * and multi-byte characters are split across window boundaries, and files
+	 * longer than the decoding buffer. Mappings are only released once garbage
+	 * collected, so the large files skip the smallest windows.
+	 *
+	 * @param directory temporary directory for the files
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testWindows(@TempDir Path directory) throws IOException {
+		SplittableRandom random = new SplittableRandom(SEED + 3);
+		int[] windows = { 4, 5, 7, 64, 1000, 4096, TextTokenizer.WINDOW_SIZE };
+
+		for (int i = 0; i < 60; i++) {
+			Path file = directory.resolve("file" + i + ".txt");
+			int pieces = i < 50 ? random.nextInt(500) : 20_000 + random.nextInt(20_000);
+			Files.writeString(file, randomText(random, pieces), UTF_8);
+			List<String> expected = expected(file);
+
+			for (int window : windows) {
+				if (Files.size(file) / window > 10_000) {
+					continue;
+				}
+
+				TextTokenizer tokenizer = new TextTokenizer(window);
+				assertEquals(expected, actual(tokenizer, file), "File " + i + " with window " + window);
+			}
+		}
+	}
+
+	/**
+	 * Tests lines and line breaks that end exactly at a window boundary
+	 *
+	 * @param directory temporary directory for the files
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testBoundaries(@TempDir Path directory) throws IOException {
+		int window = 16;
+		String[] endings = { "\n", "\r\n", "\r", "" };
+		String[] words = { "abcdefghijklmno", "abcdefghijklmné", "abcdefghijklm😀", "abcdefghijklmnop" };
+
+		for (String ending : endings) {
+			for (String word : words) {
+				Path file = directory.resolve("boundary.txt");
+				Files.writeString(file, word + ending + word + " " + word + ending + word, UTF_8);
+				assertEquals(expected(file), actual(new TextTokenizer(window), file),
+						() -> "Text: " + escape(word + ending));
+			}
+		}
+	}
+
+	/**
+	 * Escapes text that is not printable ASCII for failure messages
+	 *
+	 * @param text the text to escape
+	 * @return the escaped text
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder();
+		for (char c : text.toCharArray()) {
+			if (c >= 0x20 && c < 0x7F) {
+				escaped.append(c);
+			} else {
+				escaped.append(String.format("\\u%04X", (int) c));
+			}
+		}
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,179 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.InvertedIndex.FoundFile;
+
+/**
+ * Checks that removing locations while other threads purge the index never
+ * loses track of a removed document, so searches never return one.
+ *
+ * @author Athene Marston
+ */
+public class ThreadSafeInvertedIndexTest {
+
+	/**
+	 * Number of documents added in each round
+	 */
+	private static final int DOCUMENTS = 400;
+
+	/**
+	 * Number of threads removing documents
+	 */
+	private static final int REMOVERS = 4;
+
+	/**
+	 * Returns the paths of search results
+	 *
+	 * @param results the search results
+	 * @return the paths, sorted
+	 */
+	private static TreeSet<String> paths(List<FoundFile> results) {
+		TreeSet<String> paths = new TreeSet<>();
+		for (FoundFile result : results) {
+			paths.add(result.getPath());
+		}
+		return paths;
+	}
+
+	/**
+	 * Removes every other document while two more threads purge the index over
+	 * and over, and another searches it. Searches must never find a document
+	 * that was removed before they started, and once done, searches only find the
+	 * documents left.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	@Test
+	public void testRemoveWhilePurging() throws InterruptedException {
+		for (int round = 0; round < 50; round++) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+			TreeSet<String> expected = new TreeSet<>();
+			for (int doc = 0; doc < DOCUMENTS; doc++) {
+				String location = "doc" + doc;
+				index.addAll(List.of("shared", "word" + doc, "word" + (doc % 7)), location);
+				if (doc % 2 == 0) {
+					expected.add(location);
+				}
+			}
+
+			Set<String> removed = ConcurrentHashMap.newKeySet();
+			ArrayList<Thread> removers = new ArrayList<>();
+			for (int i = 0; i < REMOVERS; i++) {
+				int first = i;
+				removers.add(new Thread(() -> {
+					for (int doc = 2 * first + 1; doc < DOCUMENTS; doc += 2 * REMOVERS) {
+						index.removeLocation("doc" + doc);
+						removed.add("doc" + doc);
+					}
+				}));
+			}
+
+			AtomicBoolean done = new AtomicBoolean();
+			ArrayList<Thread> others = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				others.add(new Thread(() -> {
+					while (!done.get()) {
+						index.purge();
+					}
+				}));
+			}
+
+			ConcurrentLinkedQueue<String> found = new ConcurrentLinkedQueue<>(); // removed documents found
+			others.add(new Thread(() -> {
+				while (!done.get()) {
+					HashSet<String> before = new HashSet<>(removed);
+					for (FoundFile result : index.exactSearch(Set.of("shared"))) {
+						if (before.contains(result.getPath())) {
+							found.add(result.getPath());
+						}
+					}
+				}
+			}));
+
+			others.forEach(Thread::start);
+			removers.forEach(Thread::start);
+			for (Thread thread : removers) {
+				thread.join();
+			}
+			done.set(true);
+			for (Thread thread : others) {
+				thread.join();
+			}
+
+			assertEquals(List.of(), new ArrayList<>(found), "Round " + round);
+			assertEquals(expected, paths(index.exactSearch(Set.of("shared"))), "Round " + round);
+			assertEquals(expected, new TreeSet<>(index.getLocations()), "Round " + round);
+			for (int limit : new int[] { 1, 5, 50 }) { // also the pruned path
+				List<FoundFile> top = index.exactSearch(Set.of("shared", "word3"), limit);
+				assertEquals(Collections.emptySet(), removed(paths(top), expected), "Round " + round);
+			}
+
+			index.purge();
+			assertEquals(expected, paths(index.partialSearch(Set.of("sha"))), "Round " + round);
+		}
+	}
+
+	/**
+	 * Replays two overlapping purges with a removal between the ends of the two,
+	 * which must still be purged afterwards
+	 */
+	@Test
+	public void testOverlappingPurges() {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		TreeSet<String> expected = new TreeSet<>();
+		for (int doc = 0; doc < DOCUMENTS; doc++) {
+			index.addAll(List.of("shared", "word" + doc), "doc" + doc);
+			expected.add("doc" + doc);
+		}
+
+		index.removeLocation("doc1");
+		index.removeLocation("doc2");
+		expected.remove("doc1");
+		expected.remove("doc2");
+
+		BitSet first = index.tombstoned(); // both purges start
+		BitSet second = index.tombstoned();
+		for (int stripe = 0; stripe < ThreadSafeInvertedIndex.DEFAULT_STRIPES; stripe++) {
+			index.purgeStripe(stripe);
+		}
+		index.clearTombstones(first);
+
+		index.removeLocation("doc3"); // before the second purge ends
+		expected.remove("doc3");
+		index.clearTombstones(second);
+
+		assertEquals(1, index.tombstoned().cardinality());
+		assertEquals(expected, paths(index.exactSearch(Set.of("shared"))));
+		assertEquals(expected, paths(index.exactSearch(Set.of("shared"), 2 * DOCUMENTS)));
+
+		index.purge();
+		assertEquals(0, index.tombstoned().cardinality());
+		assertEquals(expected, paths(index.exactSearch(Set.of("shared"))));
+	}
+
+	/**
+	 * Returns the paths that are not expected
+	 *
+	 * @param paths    paths found
+	 * @param expected paths of the documents left
+	 * @return the paths of removed documents
+	 */
+	private static TreeSet<String> removed(TreeSet<String> paths, TreeSet<String> expected) {
+		paths.removeAll(expected);
+		return paths;
+	}
+}